@@ -0,0 +1,14 @@
+#!/bin/sh
+# Builds the application and the benchmarks into bin-bench and runs them.
+# Options are passed to BenchmarkRunner, for example:
+#   ./bench.sh --out after.csv --baseline before.csv --filter 'pipeline:.*'
+# JVM options go in JAVA_OPTS, e.g. JAVA_OPTS=-Dbench.latency=20
+set -e
+cd "$(dirname "$0")"
+rm -rf bin-bench
+mkdir -p bin-bench
+# every lint warning fails the build, except the missing boot class path
+# of -source 1.8 on newer JDKs
+javac -encoding UTF-8 -source 1.8 -target 1.8 -Xlint:all,-options -Werror \
+	-d bin-bench -cp "lib/*" $(find src bench -name '*.java')
+java $JAVA_OPTS -cp "bin-bench:lib/*" com.techstorm.BenchmarkRunner "$@"
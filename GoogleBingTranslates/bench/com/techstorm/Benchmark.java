@@ -0,0 +1,58 @@
+package com.techstorm;
+
+/**
+ * One benchmark of the translation pipeline, run by {@link BenchmarkRunner}.
+ * Every iteration calls {@link #run()} over and over for the iteration time
+ * and reports the units processed per second.
+ */
+public abstract class Benchmark {
+
+	/** results are folded into it, so the JIT cannot drop the work */
+	private static volatile int sink;
+
+	private final String name;
+	private final String unit;
+	private final String[] params;
+
+	/**
+	 * @param unit what {@link #run()} counts, like rows or lookups
+	 * @param params the variants to measure, each one set up on its own
+	 */
+	protected Benchmark(String name, String unit, String... params) {
+		this.name = name;
+		this.unit = unit;
+		this.params = params;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getUnit() {
+		return unit;
+	}
+
+	public String[] getParams() {
+		return params;
+	}
+
+	/**
+	 * Prepares the variant before its warmup.
+	 */
+	public void setUp(String param, BenchmarkInput input) throws Exception {
+	}
+
+	/**
+	 * Does the measured work once.
+	 *
+	 * @return the number of units processed
+	 */
+	public abstract long run() throws Exception;
+
+	public void tearDown() throws Exception {
+	}
+
+	protected static void consume(Object result) {
+		sink ^= result != null ? result.hashCode() : 0;
+	}
+}
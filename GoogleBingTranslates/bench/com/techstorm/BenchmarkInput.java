@@ -0,0 +1,86 @@
+package com.techstorm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import au.com.bytecode.opencsv.CSV;
+
+/**
+ * Rows of a sample feed that the benchmarks work on, read the way
+ * TranslatorApp reads its input.
+ */
+public class BenchmarkInput {
+
+	public static final CSV CSV_FORMAT = CSV.separator(',').noQuote()
+			.charset(StandardCharsets.UTF_8).create();
+
+	private final List<String> lines;
+	private final List<CsvRecord> rows = new ArrayList<CsvRecord>();
+	private final List<String> values = new ArrayList<String>();
+	private final List<Integer> columnIndexes;
+
+	/**
+	 * @param columnIndexes one based columns to translate
+	 */
+	public BenchmarkInput(File feed, List<Integer> columnIndexes)
+			throws IOException {
+		this.columnIndexes = columnIndexes;
+		lines = Files.readAllLines(feed.toPath(), StandardCharsets.UTF_8);
+		CsvReader reader = new CsvReader(feed);
+		try {
+			CsvRecord row;
+			while ((row = reader.next()) != null) {
+				rows.add(row);
+				if (rows.size() == 1) {
+					continue;
+				}
+				for (int columnIndex : columnIndexes) {
+					if (columnIndex <= row.size()
+							&& !row.get(columnIndex - 1).trim().isEmpty()) {
+						values.add(row.get(columnIndex - 1));
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	public List<Integer> getColumnIndexes() {
+		return columnIndexes;
+	}
+
+	/**
+	 * The rows of the feed, the header first.
+	 */
+	public List<CsvRecord> getRows() {
+		return rows;
+	}
+
+	/**
+	 * The values of the translated columns that are not blank.
+	 */
+	public List<String> getValues() {
+		return values;
+	}
+
+	/**
+	 * Writes a feed with the header and the given number of data rows,
+	 * repeating the lines of the sample feed.
+	 */
+	public File writeFeed(int dataRows) throws IOException {
+		File feed = File.createTempFile("bench-feed", ".csv");
+		feed.deleteOnExit();
+		List<String> output = new ArrayList<String>(dataRows + 1);
+		output.add(lines.get(0));
+		for (int row = 0; row < dataRows; row++) {
+			output.add(lines.get(1 + row % (lines.size() - 1)));
+		}
+		Files.write(feed.toPath(), output, StandardCharsets.UTF_8);
+		return feed;
+	}
+}
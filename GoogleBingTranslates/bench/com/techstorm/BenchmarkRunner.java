@@ -0,0 +1,190 @@
+package com.techstorm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import sample.util.SimpleCommandLineParser;
+
+/**
+ * Runs the benchmarks and writes the scores to a CSV report that later runs
+ * can be compared against.
+ * <p>
+ * Options: --feed (sample feed, default
+ * ../GoogleBingTranslates_TechStorm/feed.csv), --columns (default 1,3),
+ * --warmup and --iterations (default 3 and 5), --time (milliseconds per
+ * iteration, default 1000), --filter (regular expression on
+ * name:param), --out (report, default bench-results.csv) and --baseline (an
+ * earlier report to compare with).
+ */
+public class BenchmarkRunner {
+
+	/** two sided 99.9% quantile of the normal distribution */
+	private static final double Z_999 = 3.29;
+
+	public static void main(String[] args) throws Exception {
+		SimpleCommandLineParser commandLine = new SimpleCommandLineParser(args);
+		File feed = new File(option(commandLine, "feed",
+				"../GoogleBingTranslates_TechStorm/feed.csv"));
+		List<Integer> columnIndexes = new ArrayList<Integer>();
+		for (String column : option(commandLine, "columns", "1,3").split(",")) {
+			columnIndexes.add(Integer.parseInt(column.trim()));
+		}
+		int warmup = Integer.parseInt(option(commandLine, "warmup", "3"));
+		int iterations = Integer.parseInt(option(commandLine, "iterations",
+				"5"));
+		long iterationNanos = TimeUnit.MILLISECONDS.toNanos(Long
+				.parseLong(option(commandLine, "time", "1000")));
+		String filter = option(commandLine, "filter", ".*");
+		File report = new File(option(commandLine, "out",
+				"bench-results.csv"));
+		String baselineFile = commandLine.getValue("baseline");
+		Map<String, Double> baseline = baselineFile != null ? readReport(new File(
+				baselineFile)) : new HashMap<String, Double>();
+
+		BenchmarkInput input = new BenchmarkInput(feed, columnIndexes);
+		List<Benchmark> benchmarks = Arrays.asList(new CsvParseBenchmark(),
+				new TranslationMemoryBenchmark(), new QueryEncodingBenchmark(),
+				new ResponseDecodingBenchmark(), new PipelineBenchmark(),
+				new RowPipelineBenchmark(), new CsvWriteBenchmark());
+
+		System.out.println(String.format(Locale.ROOT,
+				"%-34s %14s %12s %-10s %14s %10s", "Benchmark", "Score",
+				"Error", "Unit", "Alloc B/unit", "Change"));
+		PrintWriter out = new PrintWriter(Files.newBufferedWriter(
+				report.toPath(), StandardCharsets.UTF_8));
+		try {
+			out.println("benchmark,param,unit,score,error,allocBytesPerUnit");
+			for (Benchmark benchmark : benchmarks) {
+				for (String param : benchmark.getParams()) {
+					String id = benchmark.getName() + ":" + param;
+					if (!id.matches(filter)) {
+						continue;
+					}
+					benchmark.setUp(param, input);
+					try {
+						for (int i = 0; i < warmup; i++) {
+							iterate(benchmark, iterationNanos);
+						}
+						double[] scores = new double[iterations];
+						double allocated = 0;
+						double units = 0;
+						for (int i = 0; i < iterations; i++) {
+							long allocatedBefore = allocatedBytes();
+							long start = System.nanoTime();
+							long done = iterate(benchmark, iterationNanos);
+							long elapsed = System.nanoTime() - start;
+							allocated += allocatedBytes() - allocatedBefore;
+							units += done;
+							scores[i] = done * 1e9 / elapsed;
+						}
+						double score = mean(scores);
+						double error = iterations > 1 ? Z_999
+								* standardDeviation(scores, score)
+								/ Math.sqrt(iterations) : Double.NaN;
+						double allocation = allocated / units;
+						Double previous = baseline.get(id);
+						System.out.println(String.format(Locale.ROOT,
+								"%-34s %14.1f %12.1f %-10s %14.1f %10s", id,
+								score, error, benchmark.getUnit() + "/s",
+								allocation, previous != null ? String.format(
+										Locale.ROOT, "%+.1f%%",
+										(score / previous - 1) * 100) : ""));
+						out.println(String.format(Locale.ROOT,
+								"%s,%s,%s/s,%.3f,%.3f,%.1f",
+								benchmark.getName(), param,
+								benchmark.getUnit(), score, error, allocation));
+						out.flush();
+					} finally {
+						benchmark.tearDown();
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+		System.out.println("Report written to " + report);
+	}
+
+	/**
+	 * Runs the benchmark until the iteration time is over.
+	 *
+	 * @return the units processed
+	 */
+	private static long iterate(Benchmark benchmark, long iterationNanos)
+			throws Exception {
+		long units = 0;
+		long end = System.nanoTime() + iterationNanos;
+		do {
+			units += benchmark.run();
+		} while (System.nanoTime() < end);
+		return units;
+	}
+
+	/**
+	 * Bytes allocated so far by all live threads, 0 when the JVM cannot tell.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory
+				.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return 0;
+		}
+		long total = 0;
+		for (long bytes : ((com.sun.management.ThreadMXBean) threads)
+				.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			if (bytes > 0) {
+				total += bytes;
+			}
+		}
+		return total;
+	}
+
+	private static double mean(double[] values) {
+		double sum = 0;
+		for (double value : values) {
+			sum += value;
+		}
+		return sum / values.length;
+	}
+
+	private static double standardDeviation(double[] values, double mean) {
+		double sum = 0;
+		for (double value : values) {
+			sum += (value - mean) * (value - mean);
+		}
+		return Math.sqrt(sum / (values.length - 1));
+	}
+
+	/**
+	 * The scores of an earlier report by name:param.
+	 */
+	private static Map<String, Double> readReport(File report)
+			throws IOException {
+		Map<String, Double> scores = new HashMap<String, Double>();
+		List<String> lines = Files.readAllLines(report.toPath(),
+				StandardCharsets.UTF_8);
+		for (String line : lines.subList(1, lines.size())) {
+			String[] fields = line.split(",");
+			scores.put(fields[0] + ":" + fields[1],
+					Double.parseDouble(fields[3]));
+		}
+		return scores;
+	}
+
+	private static String option(SimpleCommandLineParser commandLine,
+			String name, String defaultValue) {
+		String value = commandLine.getValue(name);
+		return value != null ? value : defaultValue;
+	}
+}
@@ -0,0 +1,70 @@
+package com.techstorm;
+
+import java.io.File;
+
+import au.com.bytecode.opencsv.CSVReadProc;
+
+/**
+ * Reading and splitting the input feed, with opencsv building a String for
+ * every field and with {@link CsvReader} decoding only the translated
+ * columns.
+ */
+public class CsvParseBenchmark extends Benchmark {
+
+	private File feed;
+	private boolean mapped;
+	private boolean[] columns;
+
+	public CsvParseBenchmark() {
+		super("csvParse", "rows", "opencsv rows=1000", "opencsv rows=10000",
+				"mapped rows=1000", "mapped rows=10000", "mapped rows=100000");
+	}
+
+	@Override
+	public void setUp(String param, BenchmarkInput input) throws Exception {
+		mapped = param.startsWith("mapped");
+		columns = TranslationEngine.columnMask(input.getColumnIndexes());
+		feed = input.writeFeed(Integer.parseInt(param.substring(param
+				.indexOf("rows=") + "rows=".length())));
+	}
+
+	@Override
+	public long run() throws Exception {
+		if (mapped) {
+			return readMapped();
+		}
+		long[] rows = new long[1];
+		BenchmarkInput.CSV_FORMAT.read(feed, new CSVReadProc() {
+			public void procRow(int rowIndex, String... values) {
+				consume(values[values.length - 1]);
+				rows[0]++;
+			}
+		});
+		return rows[0];
+	}
+
+	private long readMapped() throws Exception {
+		long rows = 0;
+		CsvReader reader = new CsvReader(feed);
+		try {
+			CsvRecord record;
+			while ((record = reader.next()) != null) {
+				int width = Math.min(record.size(), columns.length);
+				for (int index = 0; index < width; index++) {
+					if (columns[index]) {
+						consume(record.get(index));
+					}
+				}
+				rows++;
+			}
+		} finally {
+			reader.close();
+		}
+		return rows;
+	}
+
+	@Override
+	public void tearDown() {
+		feed.delete();
+	}
+}
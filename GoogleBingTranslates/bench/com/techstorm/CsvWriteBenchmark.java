@@ -0,0 +1,100 @@
+package com.techstorm;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+/**
+ * Writing the output rows to a file: every row of the sample feed with its
+ * translated columns as text and the others passed through. The opencsv
+ * variant joins each row into one string first, as the engine used to.
+ */
+public class CsvWriteBenchmark extends Benchmark {
+
+	private static final int ROWS_PER_RUN = 10000;
+
+	private String variant;
+	private boolean[] columns;
+	private List<CsvRecord> rows;
+	private String[][] translated;
+	private File output;
+
+	public CsvWriteBenchmark() {
+		super("csvWrite", "rows", "opencsv", "channel", "channel gzip");
+	}
+
+	@Override
+	public void setUp(String param, BenchmarkInput input) throws Exception {
+		variant = param;
+		columns = TranslationEngine.columnMask(input.getColumnIndexes());
+		rows = input.getRows();
+		// what the engine holds for a row: the translated columns decoded
+		translated = new String[rows.size()][];
+		for (int row = 0; row < rows.size(); row++) {
+			CsvRecord record = rows.get(row);
+			translated[row] = new String[record.size()];
+			for (int index = 0; index < record.size(); index++) {
+				if (index < columns.length && columns[index]) {
+					translated[row][index] = "[fr] " + record.get(index);
+				}
+			}
+		}
+		output = File.createTempFile("bench-write", ".csv");
+		output.deleteOnExit();
+	}
+
+	@Override
+	public long run() throws Exception {
+		if (variant.equals("opencsv")) {
+			return writeJoined();
+		}
+		CsvWriter out = CsvWriter.open(output, false,
+				variant.endsWith("gzip"));
+		try {
+			for (int count = 0; count < ROWS_PER_RUN; count++) {
+				int row = count % rows.size();
+				CsvRecord record = rows.get(row);
+				for (int index = 0; index < record.size(); index++) {
+					if (translated[row][index] != null) {
+						out.writeField(translated[row][index]);
+					} else {
+						out.writeRaw(record.getRaw(index));
+					}
+				}
+				out.endRow();
+			}
+		} finally {
+			out.close();
+		}
+		return ROWS_PER_RUN;
+	}
+
+	private long writeJoined() throws Exception {
+		CSVWriter out = BenchmarkInput.CSV_FORMAT.writer(new FileOutputStream(
+				output));
+		try {
+			for (int count = 0; count < ROWS_PER_RUN; count++) {
+				int row = count % rows.size();
+				CsvRecord record = rows.get(row);
+				StringBuilder line = new StringBuilder();
+				for (int index = 0; index < record.size(); index++) {
+					String value = translated[row][index];
+					line.append(value != null ? value : record.get(index));
+					line.append(",");
+				}
+				line.deleteCharAt(line.length() - 1);
+				out.writeNext(line.toString());
+			}
+		} finally {
+			out.close();
+		}
+		return ROWS_PER_RUN;
+	}
+
+	@Override
+	public void tearDown() {
+		output.delete();
+	}
+}
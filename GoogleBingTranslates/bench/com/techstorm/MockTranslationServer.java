@@ -0,0 +1,329 @@
+package com.techstorm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+
+import sample.util.SimpleCommandLineParser;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for Google Translate v2 and Microsoft Translator, to tune
+ * threads and rate limits without using real quota. Texts are translated
+ * like {@link LocalTranslationProvider} does.
+ * <p>
+ * Point the application at it with googleEndpoint=http://localhost:8089 and
+ * bingEndpoint=http://localhost:8089 in config.properties.
+ * <p>
+ * Options: --port (default 8089), --threads (requests served at once,
+ * default 64), --latency (median milliseconds, default 50),
+ * --distribution (fixed, uniform or lognormal, default lognormal), --spread
+ * (relative spread of uniform, sigma of lognormal, default 0.5),
+ * --error-rate (share of requests failing with 503, default 0),
+ * --throttle-rate (share failing with 429, default 0), --retry-after
+ * (seconds sent with a 429, default 1), --quota (characters per key and
+ * window, 0 for none), --quota-window (seconds, default 60), --seed.
+ */
+public class MockTranslationServer {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final long latencyMillis;
+	private final String distribution;
+	private final double spread;
+	private final double errorRate;
+	private final double throttleRate;
+	private final long retryAfterSeconds;
+	private final long quotaCharacters;
+	private final long quotaWindowMillis;
+	private final Random random;
+	private final Map<String, Quota> quotas = new ConcurrentHashMap<String, Quota>();
+	private final Map<Integer, AtomicLong> responses = new ConcurrentHashMap<Integer, AtomicLong>();
+
+	public MockTranslationServer(SimpleCommandLineParser options) {
+		latencyMillis = Long.parseLong(option(options, "latency", "50"));
+		distribution = option(options, "distribution", "lognormal");
+		spread = Double.parseDouble(option(options, "spread", "0.5"));
+		errorRate = Double.parseDouble(option(options, "error-rate", "0"));
+		throttleRate = Double.parseDouble(option(options, "throttle-rate",
+				"0"));
+		retryAfterSeconds = Long
+				.parseLong(option(options, "retry-after", "1"));
+		quotaCharacters = Long.parseLong(option(options, "quota", "0"));
+		quotaWindowMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(option(
+				options, "quota-window", "60")));
+		String seed = options.getValue("seed");
+		random = seed != null ? new Random(Long.parseLong(seed)) : new Random();
+	}
+
+	public static void main(String[] args) throws IOException {
+		SimpleCommandLineParser options = new SimpleCommandLineParser(args);
+		MockTranslationServer mock = new MockTranslationServer(options);
+		int port = Integer.parseInt(option(options, "port", "8089"));
+		HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/language/translate/v2", mock.new GoogleHandler());
+		server.createContext("/token", mock.new TokenHandler());
+		server.createContext("/V2/Ajax.svc/TranslateArray",
+				mock.new BingHandler());
+		server.setExecutor(Executors.newFixedThreadPool(Integer
+				.parseInt(option(options, "threads", "64"))));
+		server.start();
+		System.out.println("Mock translation server listening on port "
+				+ port);
+		Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(
+				() -> System.out.println("Responses by status: "
+						+ new TreeMap<Integer, AtomicLong>(
+								mock.responses)), 10, 10, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Google v2: key, source, target and q parameters, in the url or in a
+	 * form body.
+	 */
+	private class GoogleHandler implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				Map<String, List<String>> parameters = readParameters(exchange);
+				List<String> texts = get(parameters, "q");
+				String key = first(parameters, "key");
+				int status = simulate(key, texts);
+				if (status != 200) {
+					Map<String, Object> error = new LinkedHashMap<String, Object>();
+					error.put("code", status);
+					error.put("message", status == 403 ? "Daily Limit Exceeded"
+							: status == 429 ? "Rate Limit Exceeded"
+									: "Backend Error");
+					send(exchange, status,
+							Collections.singletonMap("error", error));
+					return;
+				}
+				List<Map<String, String>> translations = new ArrayList<Map<String, String>>();
+				for (String translation : LocalTranslationProvider
+						.translateNow(texts, first(parameters, "target"))) {
+					translations.add(Collections.singletonMap(
+							"translatedText", translation));
+				}
+				send(exchange, 200, Collections.singletonMap("data",
+						Collections.singletonMap("translations", translations)));
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	/**
+	 * Bing access tokens, the token is the client id so translation requests
+	 * can be counted against it.
+	 */
+	private class TokenHandler implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				Map<String, List<String>> parameters = readParameters(exchange);
+				Map<String, String> token = new LinkedHashMap<String, String>();
+				token.put("access_token", first(parameters, "client_id"));
+				token.put("token_type", "bearer");
+				token.put("expires_in", "600");
+				send(exchange, 200, token);
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	/**
+	 * Bing TranslateArray: from, to and a JSON array of texts.
+	 */
+	private class BingHandler implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				Map<String, List<String>> parameters = readParameters(exchange);
+				List<String> texts;
+				try {
+					texts = MAPPER.readValue(first(parameters, "texts"),
+							new TypeReference<List<String>>() {
+							});
+				} catch (IOException e) {
+					send(exchange, 400, "Bad texts: " + e.getMessage());
+					return;
+				}
+				String authorization = exchange.getRequestHeaders().getFirst(
+						"Authorization");
+				String key = authorization != null ? authorization
+						.replaceFirst("^Bearer ", "") : null;
+				int status = simulate(key, texts);
+				if (status != 200) {
+					send(exchange, status, "HTTP " + status);
+					return;
+				}
+				List<Map<String, String>> translations = new ArrayList<Map<String, String>>();
+				for (String translation : LocalTranslationProvider
+						.translateNow(texts, first(parameters, "to"))) {
+					translations.add(Collections.singletonMap(
+							"TranslatedText", translation));
+				}
+				send(exchange, 200, translations);
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	/**
+	 * Waits for the simulated latency and decides how the request ends.
+	 *
+	 * @return the HTTP status to answer with
+	 */
+	private int simulate(String key, List<String> texts) {
+		try {
+			TimeUnit.MILLISECONDS.sleep(sampleLatency());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (key == null) {
+			return 400;
+		}
+		double draw = random.nextDouble();
+		if (draw < errorRate) {
+			return 503;
+		}
+		if (draw < errorRate + throttleRate) {
+			return 429;
+		}
+		if (quotaCharacters > 0) {
+			Quota quota = quotas.computeIfAbsent(key, k -> new Quota());
+			if (!quota.take(TranslationProvider.countCharacters(texts))) {
+				return 403;
+			}
+		}
+		return 200;
+	}
+
+	private long sampleLatency() {
+		switch (distribution) {
+		case "fixed":
+			return latencyMillis;
+		case "uniform":
+			return Math.max(0, Math.round(latencyMillis
+					* (1 + spread * (2 * random.nextDouble() - 1))));
+		default:
+			return Math.round(latencyMillis
+					* Math.exp(spread * random.nextGaussian()));
+		}
+	}
+
+	/**
+	 * Characters used by one key in the current window.
+	 */
+	private class Quota {
+		private long windowStart = System.currentTimeMillis();
+		private long used;
+
+		synchronized boolean take(long characters) {
+			long now = System.currentTimeMillis();
+			if (now - windowStart >= quotaWindowMillis) {
+				windowStart = now;
+				used = 0;
+			}
+			if (used + characters > quotaCharacters) {
+				return false;
+			}
+			used += characters;
+			return true;
+		}
+	}
+
+	private void send(HttpExchange exchange, int status, Object body)
+			throws IOException {
+		responses.computeIfAbsent(status, s -> new AtomicLong())
+				.incrementAndGet();
+		byte[] bytes = body instanceof String ? ((String) body)
+				.getBytes(StandardCharsets.UTF_8) : MAPPER
+				.writeValueAsBytes(body);
+		exchange.getResponseHeaders().set("Content-Type",
+				"application/json; charset=UTF-8");
+		if (status == 429) {
+			exchange.getResponseHeaders().set("Retry-After",
+					String.valueOf(retryAfterSeconds));
+		}
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream output = exchange.getResponseBody();
+		output.write(bytes);
+		output.close();
+	}
+
+	/**
+	 * The parameters of the url and of a form body.
+	 */
+	private static Map<String, List<String>> readParameters(
+			HttpExchange exchange) throws IOException {
+		Map<String, List<String>> parameters = new HashMap<String, List<String>>();
+		parse(exchange.getRequestURI().getRawQuery(), parameters);
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		InputStream input = exchange.getRequestBody();
+		byte[] buffer = new byte[8192];
+		for (int read; (read = input.read(buffer)) != -1;) {
+			body.write(buffer, 0, read);
+		}
+		parse(new String(body.toByteArray(), StandardCharsets.UTF_8),
+				parameters);
+		return parameters;
+	}
+
+	private static void parse(String query,
+			Map<String, List<String>> parameters) throws IOException {
+		if (query == null || query.isEmpty()) {
+			return;
+		}
+		for (String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals <= 0) {
+				continue;
+			}
+			String name = URLDecoder.decode(pair.substring(0, equals), "UTF-8");
+			String value = URLDecoder.decode(pair.substring(equals + 1),
+					"UTF-8");
+			parameters.computeIfAbsent(name, n -> new ArrayList<String>()).add(
+					value);
+		}
+	}
+
+	private static List<String> get(Map<String, List<String>> parameters,
+			String name) {
+		List<String> values = parameters.get(name);
+		return values != null ? values : Collections.<String> emptyList();
+	}
+
+	private static String first(Map<String, List<String>> parameters,
+			String name) {
+		List<String> values = get(parameters, name);
+		return values.isEmpty() ? null : values.get(0);
+	}
+
+	private static String option(SimpleCommandLineParser options,
+			String name, String defaultValue) {
+		String value = options.getValue(name);
+		return value != null ? value : defaultValue;
+	}
+}
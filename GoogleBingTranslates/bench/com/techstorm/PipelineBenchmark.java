@@ -0,0 +1,113 @@
+package com.techstorm;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Rows per second through the translation engine into the output files,
+ * chained into two languages by the {@link LocalTranslationProvider}. The
+ * simulated latency per request is set with -Dbench.latency (milliseconds,
+ * default 5), the rows per run with -Dbench.pipelineRows (default 200).
+ */
+public class PipelineBenchmark extends Benchmark {
+
+	private static final List<String> LANGUAGES = Arrays.asList("fr", "it");
+
+	private final long latency = Long.getLong("bench.latency", 5);
+	private final int pipelineRows = Integer.getInteger("bench.pipelineRows",
+			200);
+	private Config config;
+	private List<Integer> columnIndexes;
+	private List<CsvRecord> rows;
+	private ExecutorService workers;
+	private TranslationProvider provider;
+	private Map<String, File> outputs;
+	private File progressFile;
+
+	public PipelineBenchmark() {
+		super("pipeline", "rows", "threads=1", "threads=4", "threads=16");
+	}
+
+	@Override
+	public void setUp(String param, BenchmarkInput input) throws Exception {
+		config = new Config();
+		config.threads = Integer.parseInt(param.substring("threads=".length()));
+		config.batchSize = 8;
+		config.fromLanguage = "ro";
+		config.toLanguages = LANGUAGES;
+		columnIndexes = input.getColumnIndexes();
+
+		rows = new ArrayList<CsvRecord>(pipelineRows);
+		List<CsvRecord> feed = input.getRows();
+		for (int row = 0; row < pipelineRows; row++) {
+			rows.add(feed.get(1 + row % (feed.size() - 1)));
+		}
+
+		Executor executor;
+		if (config.threads > 1) {
+			workers = Executors.newFixedThreadPool(config.threads);
+			executor = workers;
+		} else {
+			executor = Runnable::run;
+		}
+		provider = new LocalTranslationProvider(latency, 0, executor);
+
+		outputs = new HashMap<String, File>();
+		for (String language : LANGUAGES) {
+			File output = File.createTempFile("bench-output-" + language,
+					".csv");
+			output.deleteOnExit();
+			outputs.put(language, output);
+		}
+		progressFile = File.createTempFile("bench", ".progress");
+		progressFile.deleteOnExit();
+	}
+
+	@Override
+	public long run() throws Exception {
+		Map<String, CsvWriter> writers = new HashMap<String, CsvWriter>();
+		for (Map.Entry<String, File> output : outputs.entrySet()) {
+			writers.put(output.getKey(),
+					CsvWriter.open(output.getValue(), false, false));
+		}
+		Checkpoint checkpoint = new Checkpoint(progressFile, outputs,
+				Long.MAX_VALUE);
+		TranslationEngine engine = new TranslationEngine(config,
+				columnIndexes, this::translate, writers, checkpoint,
+				new Metrics(null));
+		try {
+			for (CsvRecord row : rows) {
+				engine.submit(row);
+			}
+			engine.finish();
+		} finally {
+			engine.close();
+		}
+		return rows.size();
+	}
+
+	private CompletableFuture<List<String>> translate(List<String> values,
+			String fromLanguage, String toLanguage, String correlationId) {
+		return provider.translateAsync(values, fromLanguage, toLanguage);
+	}
+
+	@Override
+	public void tearDown() {
+		if (workers != null) {
+			workers.shutdown();
+			workers = null;
+		}
+		for (File output : outputs.values()) {
+			output.delete();
+		}
+		progressFile.delete();
+	}
+}
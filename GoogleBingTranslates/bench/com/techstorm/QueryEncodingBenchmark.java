@@ -0,0 +1,34 @@
+package com.techstorm;
+
+import java.util.List;
+
+import com.translator.google.translator.OnlineGoogleTranslator;
+
+/**
+ * URL encoding the q parameters of Google v2 requests.
+ */
+public class QueryEncodingBenchmark extends Benchmark {
+
+	private List<String> values;
+	private int batchSize;
+
+	public QueryEncodingBenchmark() {
+		super("queryEncoding", "texts", "batch=1", "batch=16", "batch=128");
+	}
+
+	@Override
+	public void setUp(String param, BenchmarkInput input) {
+		values = input.getValues();
+		batchSize = Integer.parseInt(param.substring("batch=".length()));
+	}
+
+	@Override
+	public long run() throws Exception {
+		for (int start = 0; start < values.size(); start += batchSize) {
+			consume(OnlineGoogleTranslator.encodeQuery(values.subList(start,
+					Math.min(values.size(), start + batchSize)),
+					OnlineGoogleTranslator.DEFAULT_CHARSET));
+		}
+		return values.size();
+	}
+}
@@ -0,0 +1,43 @@
+package com.techstorm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.translator.google.translator.OnlineGoogleTranslator;
+
+/**
+ * Decoding the JSON of Google v2 responses.
+ */
+public class ResponseDecodingBenchmark extends Benchmark {
+
+	private String response;
+	private int batchSize;
+
+	public ResponseDecodingBenchmark() {
+		super("responseDecoding", "texts", "batch=1", "batch=16", "batch=128");
+	}
+
+	@Override
+	public void setUp(String param, BenchmarkInput input) throws Exception {
+		batchSize = Integer.parseInt(param.substring("batch=".length()));
+		List<String> values = input.getValues();
+		List<Map<String, String>> translations = new ArrayList<Map<String, String>>();
+		for (int index = 0; index < batchSize; index++) {
+			translations.add(Collections.singletonMap("translatedText",
+					values.get(index % values.size())));
+		}
+		response = new ObjectMapper().writeValueAsString(Collections
+				.singletonMap("data", Collections.singletonMap(
+						"translations", translations)));
+	}
+
+	@Override
+	public long run() throws Exception {
+		consume(OnlineGoogleTranslator.decodeTranslations(response, batchSize));
+		return batchSize;
+	}
+}
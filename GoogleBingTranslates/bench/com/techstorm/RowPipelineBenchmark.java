@@ -0,0 +1,118 @@
+package com.techstorm;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The translation engine's own cost per row: rows chained into two languages
+ * by a translator that answers at once on the reading thread, written to
+ * outputs that discard them. The allocation per row must stay the same
+ * whatever the number of rows, work that grows with the input shows up as
+ * more bytes per row in the bigger variants.
+ */
+public class RowPipelineBenchmark extends Benchmark {
+
+	private static final List<String> LANGUAGES = Arrays.asList("fr", "it");
+
+	private Config config;
+	private List<Integer> columnIndexes;
+	private List<CsvRecord> rows;
+	private Map<String, File> outputs;
+	private File progressFile;
+
+	public RowPipelineBenchmark() {
+		super("rowPipeline", "rows", "rows=1000", "rows=10000", "rows=100000");
+	}
+
+	@Override
+	public void setUp(String param, BenchmarkInput input) throws Exception {
+		config = new Config();
+		config.threads = 1;
+		config.batchSize = 8;
+		config.fromLanguage = "ro";
+		config.toLanguages = LANGUAGES;
+		columnIndexes = input.getColumnIndexes();
+
+		int rowCount = Integer.parseInt(param.substring("rows=".length()));
+		rows = new ArrayList<CsvRecord>(rowCount);
+		List<CsvRecord> feed = input.getRows();
+		for (int row = 0; row < rowCount; row++) {
+			rows.add(feed.get(1 + row % (feed.size() - 1)));
+		}
+
+		// the outputs stay empty, they only give the checkpoint a length
+		outputs = new HashMap<String, File>();
+		for (String language : LANGUAGES) {
+			File output = File.createTempFile("bench-output-" + language,
+					".csv");
+			output.deleteOnExit();
+			outputs.put(language, output);
+		}
+		progressFile = File.createTempFile("bench", ".progress");
+		progressFile.deleteOnExit();
+	}
+
+	@Override
+	public long run() throws Exception {
+		Map<String, CsvWriter> writers = new HashMap<String, CsvWriter>();
+		for (String language : LANGUAGES) {
+			writers.put(language, new CsvWriter(new DiscardingChannel(), false));
+		}
+		Checkpoint checkpoint = new Checkpoint(progressFile, outputs,
+				Long.MAX_VALUE);
+		TranslationEngine engine = new TranslationEngine(config,
+				columnIndexes, this::translate, writers, checkpoint,
+				new Metrics(null));
+		try {
+			for (CsvRecord row : rows) {
+				engine.submit(row);
+			}
+			engine.finish();
+		} finally {
+			engine.close();
+		}
+		return rows.size();
+	}
+
+	private CompletableFuture<List<String>> translate(List<String> values,
+			String fromLanguage, String toLanguage, String correlationId) {
+		return CompletableFuture.completedFuture(LocalTranslationProvider
+				.translateNow(values, toLanguage));
+	}
+
+	@Override
+	public void tearDown() {
+		for (File output : outputs.values()) {
+			output.delete();
+		}
+		progressFile.delete();
+	}
+
+	/**
+	 * Takes every byte and keeps none.
+	 */
+	static class DiscardingChannel implements WritableByteChannel {
+		private boolean open = true;
+
+		public int write(ByteBuffer bytes) {
+			int count = bytes.remaining();
+			bytes.position(bytes.limit());
+			return count;
+		}
+
+		public boolean isOpen() {
+			return open;
+		}
+
+		public void close() {
+			open = false;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package com.techstorm;
+
+import java.util.List;
+
+/**
+ * Translation memory lookups: hashing the key and looking it up in the
+ * cache, for values that were translated before and values that were not.
+ */
+public class TranslationMemoryBenchmark extends Benchmark {
+
+	private List<String> values;
+	private TranslationMemory memory;
+	private String toLanguage;
+
+	public TranslationMemoryBenchmark() {
+		super("memoryLookup", "lookups", "key", "hit", "miss");
+	}
+
+	@Override
+	public void setUp(String param, BenchmarkInput input) throws Exception {
+		values = input.getValues();
+		memory = new TranslationMemory(null, new TranslationCache(
+				256L * 1024 * 1024));
+		for (String value : values) {
+			memory.put("google", value, "ro", "fr", value);
+		}
+		toLanguage = param.equals("miss") ? "it" : "fr";
+		if (param.equals("key")) {
+			memory = null;
+		}
+	}
+
+	@Override
+	public long run() throws Exception {
+		for (String value : values) {
+			if (memory == null) {
+				consume(TranslationKey.of("google", value, "ro", toLanguage));
+			} else {
+				consume(memory.get("google", value, "ro", toLanguage));
+			}
+		}
+		return values.size();
+	}
+}
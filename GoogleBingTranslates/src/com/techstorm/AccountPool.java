@@ -0,0 +1,144 @@
+package com.techstorm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Spreads requests round-robin over the accounts of one provider. An account
+ * that runs out of quota is benched for a while and skipped until the bench
+ * time is over. Requests are rate limited for the provider as a whole and for
+ * every account on its own.
+ *
+ * @param <T> the client used to call the provider with an account
+ */
+public class AccountPool<T> {
+
+	private static final Logger LOG = Logger.getLogger(AccountPool.class
+			.getName());
+
+	public static class Member<T> {
+		public final Account account;
+		public final T client;
+		final RateLimiter limiter;
+		private volatile long benchedUntil;
+
+		Member(Account account, T client, RateLimiter limiter) {
+			this.account = account;
+			this.client = client;
+			this.limiter = limiter;
+		}
+
+		public boolean isBenched(long now) {
+			return benchedUntil > now;
+		}
+	}
+
+	private final List<Member<T>> members = new ArrayList<Member<T>>();
+	private final long benchMillis;
+	private final RateLimiter providerLimiter;
+	private final double keyRequestsPerSecond;
+	private final double keyCharactersPerSecond;
+	private int next;
+
+	/**
+	 * @param providerLimiter shared by all accounts of the provider
+	 * @param keyRequestsPerSecond limit of every account, zero for none
+	 * @param keyCharactersPerSecond limit of every account, zero for none
+	 */
+	public AccountPool(long benchMillis, RateLimiter providerLimiter,
+			double keyRequestsPerSecond, double keyCharactersPerSecond) {
+		this.benchMillis = benchMillis;
+		this.providerLimiter = providerLimiter;
+		this.keyRequestsPerSecond = keyRequestsPerSecond;
+		this.keyCharactersPerSecond = keyCharactersPerSecond;
+	}
+
+	public synchronized void add(Account account, T client) {
+		members.add(new Member<T>(account, client, new RateLimiter(
+				keyRequestsPerSecond, keyCharactersPerSecond)));
+	}
+
+	/**
+	 * Waits until the provider and the account both allow a request with the
+	 * given number of characters.
+	 */
+	public void acquire(Member<T> member, long characterCount)
+			throws InterruptedException {
+		providerLimiter.acquire(characterCount);
+		member.limiter.acquire(characterCount);
+	}
+
+	public synchronized boolean isEmpty() {
+		return members.isEmpty();
+	}
+
+	public synchronized int size() {
+		return members.size();
+	}
+
+	/**
+	 * The next account in rotation. When every account is benched the one
+	 * that comes back first is used anyway.
+	 */
+	public synchronized Member<T> next() {
+		Member<T> member = select(next);
+		next = (members.indexOf(member) + 1) % members.size();
+		return member;
+	}
+
+	/**
+	 * The first account, in configured order, that is not benched. For
+	 * clients that can only use one account at a time.
+	 */
+	public synchronized Member<T> preferred() {
+		return select(0);
+	}
+
+	private Member<T> select(int start) {
+		if (members.isEmpty()) {
+			throw new IllegalStateException("No accounts configured");
+		}
+		long now = System.currentTimeMillis();
+		Member<T> soonest = null;
+		for (int i = 0; i < members.size(); i++) {
+			Member<T> member = members.get((start + i) % members.size());
+			if (!member.isBenched(now)) {
+				return member;
+			}
+			if (soonest == null || member.benchedUntil < soonest.benchedUntil) {
+				soonest = member;
+			}
+		}
+		return soonest;
+	}
+
+	/**
+	 * Takes an account out of rotation for the bench time.
+	 */
+	public void bench(Member<T> member) {
+		member.benchedUntil = System.currentTimeMillis() + benchMillis;
+		LOG.warning("Account " + member.account.username
+				+ " is out of quota, benched for " + benchMillis / 1000 + "s");
+	}
+
+	/**
+	 * Whether a failure means the account hit its quota or was refused: a
+	 * 403, or a 429 whose reason is the quota or the daily limit. Other 429s
+	 * only throttle for a moment and are left to the {@link RetryPolicy}.
+	 */
+	public static boolean isQuotaError(Throwable failure) {
+		int statusCode = RetryPolicy.getStatusCode(failure);
+		if (statusCode == 403) {
+			return true;
+		}
+		String message = RetryPolicy.unwrap(failure).getMessage();
+		if (statusCode != 429 || message == null) {
+			return false;
+		}
+		message = message.toLowerCase();
+		return message.contains("quotaexceeded")
+				|| message.contains("dailylimitexceeded")
+				|| message.contains("daily limit");
+	}
+}
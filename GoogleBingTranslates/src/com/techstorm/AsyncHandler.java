@@ -0,0 +1,108 @@
+package com.techstorm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Hands log records to another handler on a background thread, so logging
+ * never waits for the console or the disk. When the queue is full records
+ * below WARNING are dropped and counted, warnings and errors wait for room.
+ */
+public class AsyncHandler extends Handler {
+
+	private final Handler target;
+	private final BlockingQueue<LogRecord> queue;
+	private final Thread writer;
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile boolean closed;
+
+	public AsyncHandler(Handler target, int capacity) {
+		this.target = target;
+		this.queue = new ArrayBlockingQueue<LogRecord>(capacity);
+		writer = new Thread(this::drain, "async-log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public void publish(LogRecord record) {
+		if (closed || !isLoggable(record)) {
+			return;
+		}
+		if (record.getLevel().intValue() < Level.WARNING.intValue()) {
+			if (!queue.offer(record)) {
+				dropped.incrementAndGet();
+			}
+			return;
+		}
+		try {
+			queue.put(record);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void drain() {
+		List<LogRecord> batch = new ArrayList<LogRecord>();
+		while (!closed || !queue.isEmpty()) {
+			try {
+				LogRecord record = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (record == null) {
+					continue;
+				}
+				batch.add(record);
+				queue.drainTo(batch);
+				for (LogRecord next : batch) {
+					target.publish(next);
+				}
+				batch.clear();
+				target.flush();
+			} catch (InterruptedException e) {
+				// closing, the loop drains what is left
+			} catch (RuntimeException e) {
+				reportError("Cannot write log record", e,
+						ErrorManager.WRITE_FAILURE);
+			}
+		}
+	}
+
+	/**
+	 * Records are written as soon as the background thread gets to them.
+	 */
+	@Override
+	public void flush() {
+	}
+
+	/**
+	 * Writes the queued records and closes the target handler.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			writer.join(TimeUnit.SECONDS.toMillis(10));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (dropped.get() > 0) {
+			target.publish(new LogRecord(Level.WARNING, dropped.get()
+					+ " log records were dropped, the log queue was full"));
+		}
+		target.close();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+}
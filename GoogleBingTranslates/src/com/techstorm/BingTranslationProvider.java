@@ -0,0 +1,229 @@
+package com.techstorm;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.memetix.mst.MicrosoftTranslatorAPI;
+import com.memetix.mst.language.Language;
+import com.memetix.mst.translate.Translate;
+
+/**
+ * Microsoft Translator through the memetix {@link Translate} client.
+ */
+public class BingTranslationProvider implements TranslationProvider {
+
+	private static final Logger LOG = Logger
+			.getLogger(BingTranslationProvider.class.getName());
+
+	private static final int MAX_TEXTS_PER_REQUEST = 128;
+	/** host the client sends its translation requests to */
+	private static final String SERVICE_HOST = "api.microsofttranslator.com";
+
+	private final AccountPool<Account> accounts;
+	private final RetryPolicy retryPolicy;
+	private final Metrics metrics;
+	/** runs the blocking client calls */
+	private final Executor executor;
+	private AccountPool.Member<Account> activeAccount;
+
+	public BingTranslationProvider(AccountPool<Account> accounts,
+			RetryPolicy retryPolicy, Metrics metrics, Executor executor) {
+		this.accounts = accounts;
+		this.retryPolicy = retryPolicy;
+		this.metrics = metrics;
+		this.executor = executor;
+	}
+
+	public String getName() {
+		return "bing";
+	}
+
+	public int getMaxTextsPerRequest() {
+		return MAX_TEXTS_PER_REQUEST;
+	}
+
+	public CompletableFuture<List<String>> translateAsync(List<String> texts,
+			String fromLanguage, String toLanguage) {
+		return retryPolicy.execute(() -> execute(texts, fromLanguage,
+				toLanguage, accounts.size()));
+	}
+
+	/**
+	 * Moves on to the next account of the pool when the active one runs out
+	 * of quota, at most {@code attempts} accounts are tried.
+	 */
+	private CompletableFuture<List<String>> execute(List<String> texts,
+			String fromLanguage, String toLanguage, int attempts) {
+		CompletableFuture<List<String>> result = new CompletableFuture<List<String>>();
+		executor.execute(() -> {
+			AccountPool.Member<Account> member = useAccount();
+			try {
+				accounts.acquire(member,
+						TranslationProvider.countCharacters(texts));
+				String[] escapedTexts = new String[texts.size()];
+				for (int index = 0; index < escapedTexts.length; index++) {
+					escapedTexts[index] = escapeJson(texts.get(index));
+				}
+				String[] translatedTexts = Translate.execute(escapedTexts,
+						getLanguage(fromLanguage), getLanguage(toLanguage));
+				if (translatedTexts == null
+						|| translatedTexts.length != texts.size()) {
+					throw new IOException("Bing returned "
+							+ (translatedTexts == null ? 0
+									: translatedTexts.length)
+							+ " translations for " + texts.size() + " texts");
+				}
+				result.complete(Arrays.asList(translatedTexts));
+			} catch (Throwable e) {
+				metrics.requestFailed(member.account.username, e);
+				if (AccountPool.isQuotaError(e)) {
+					accounts.bench(member);
+					if (attempts > 1) {
+						// the benched account is no longer the preferred one
+						execute(texts, fromLanguage, toLanguage, attempts - 1)
+								.whenComplete((translations, failure) -> {
+									if (failure != null) {
+										result.completeExceptionally(failure);
+									} else {
+										result.complete(translations);
+									}
+								});
+						return;
+					}
+				}
+				result.completeExceptionally(e);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * The client puts the texts between quotes into a JSON array without
+	 * escaping them, so a quote in a text would break the request.
+	 */
+	private static String escapeJson(String text) {
+		StringBuilder escaped = new StringBuilder(text.length() + 16);
+		for (int index = 0; index < text.length(); index++) {
+			char c = text.charAt(index);
+			switch (c) {
+			case '"':
+			case '\\':
+				escaped.append('\\').append(c);
+				break;
+			case '\n':
+				escaped.append("\\n");
+				break;
+			case '\r':
+				escaped.append("\\r");
+				break;
+			case '\t':
+				escaped.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					escaped.append(String.format("\\u%04x", (int) c));
+				} else {
+					escaped.append(c);
+				}
+			}
+		}
+		return escaped.toString();
+	}
+
+	/**
+	 * The Bing client keeps its credentials and access token in static
+	 * fields, so only one Bing account is active at a time. It is switched
+	 * when the active account gets benched.
+	 */
+	private AccountPool.Member<Account> useAccount() {
+		synchronized (Translate.class) {
+			AccountPool.Member<Account> member = accounts.preferred();
+			if (member != activeAccount) {
+				setAuth(member.account.clientId, member.account.secret);
+				activeAccount = member;
+			}
+			return member;
+		}
+	}
+
+	private static void setAuth(String clientId, String secret) {
+		Translate.setClientId(clientId);
+		Translate.setClientSecret(secret);
+		// expire the token fetched with the previous credentials
+		try {
+			Field tokenExpiration = MicrosoftTranslatorAPI.class
+					.getDeclaredField("tokenExpiration");
+			tokenExpiration.setAccessible(true);
+			tokenExpiration.setLong(null, 0L);
+		} catch (ReflectiveOperationException e) {
+			LOG.log(Level.WARNING, "Cannot expire the Bing access token", e);
+		}
+	}
+
+	/**
+	 * Sends the requests of the client to another server, like a local mock
+	 * server, instead of Microsoft. The client has its service url compiled
+	 * in, so translation requests are routed through the endpoint as an HTTP
+	 * proxy. The token url is a plain field and is pointed at /token of the
+	 * endpoint.
+	 *
+	 * @param endpoint scheme, host and port, like http://localhost:8089
+	 */
+	public static void useEndpoint(String endpoint) throws IOException {
+		URL url = new URL(endpoint);
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+		Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(
+				url.getHost(), port));
+		ProxySelector defaultSelector = ProxySelector.getDefault();
+		ProxySelector.setDefault(new ProxySelector() {
+			@Override
+			public List<Proxy> select(URI uri) {
+				if (SERVICE_HOST.equalsIgnoreCase(uri.getHost())) {
+					return Collections.singletonList(proxy);
+				}
+				return defaultSelector != null ? defaultSelector.select(uri)
+						: Collections.singletonList(Proxy.NO_PROXY);
+			}
+
+			@Override
+			public void connectFailed(URI uri, SocketAddress address,
+					IOException e) {
+				if (defaultSelector != null) {
+					defaultSelector.connectFailed(uri, address, e);
+				}
+			}
+		});
+		try {
+			Field accessUri = MicrosoftTranslatorAPI.class
+					.getDeclaredField("DatamarketAccessUri");
+			accessUri.setAccessible(true);
+			accessUri.set(null, endpoint.replaceAll("/+$", "") + "/token");
+		} catch (ReflectiveOperationException e) {
+			throw new IOException("Cannot change the Bing token url", e);
+		}
+	}
+
+	private static Language getLanguage(String languageString) {
+		Language result = Language.ENGLISH;
+		for (Language lang : Language.values()) {
+			if (languageString.equalsIgnoreCase(lang.name())
+					|| languageString.equalsIgnoreCase(lang.toString())) {
+				result = lang;
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,169 @@
+package com.techstorm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Progress of a run, so that a run that died can be resumed. After every
+ * {@link Config#checkpointRows} rows the outputs are forced to the disk and the
+ * number of input rows written plus the length of every output file is saved
+ * to the progress file. Resuming cuts the outputs back to those lengths and
+ * skips the rows that were already written.
+ */
+public class Checkpoint {
+	private static final Logger LOG = Logger.getLogger(Checkpoint.class
+			.getName());
+
+	private final File progressFile;
+	/** output file of every language that is written */
+	private final Map<String, File> outputs;
+	private final long everyRows;
+	/** forced to the disk with every checkpoint, may be null */
+	private final TranslationMemory memory;
+	private long committedRows;
+	private long lastCheckpointRows;
+
+	public Checkpoint(File progressFile, Map<String, File> outputs,
+			long everyRows) {
+		this(progressFile, outputs, everyRows, null);
+	}
+
+	/**
+	 * @param memory
+	 *            the translation memory, forced to the disk with every
+	 *            checkpoint so the translations of the rows written so far
+	 *            survive a crash as well
+	 */
+	public Checkpoint(File progressFile, Map<String, File> outputs,
+			long everyRows, TranslationMemory memory) {
+		this.progressFile = progressFile;
+		this.outputs = outputs;
+		this.everyRows = everyRows;
+		this.memory = memory;
+	}
+
+	/**
+	 * Reads the progress file and truncates every output to its checkpointed
+	 * length, dropping the rows written after the last checkpoint. An output
+	 * shorter than that lost checkpointed bytes, in a crash of the machine,
+	 * and the run starts over rather than append after the gap.
+	 *
+	 * @return the number of input rows already written
+	 */
+	public long restore() throws IOException {
+		if (!progressFile.exists()) {
+			return 0;
+		}
+		Properties progress = new Properties();
+		InputStream input = new FileInputStream(progressFile);
+		try {
+			progress.load(input);
+		} finally {
+			input.close();
+		}
+
+		// every output must have been checkpointed at the same row, anything
+		// else is not trustworthy and the run starts over
+		String rows = null;
+		for (String language : outputs.keySet()) {
+			String written = progress.getProperty("rows." + language);
+			if (written == null || (rows != null && !rows.equals(written))
+					|| progress.getProperty("bytes." + language) == null) {
+				rows = "0";
+				break;
+			}
+			rows = written;
+		}
+		long committed = rows != null ? Long.parseLong(rows) : 0;
+		for (Map.Entry<String, File> output : outputs.entrySet()) {
+			if (committed > 0
+					&& output.getValue().length() < Long.parseLong(progress
+							.getProperty("bytes." + output.getKey()))) {
+				LOG.warning(output.getValue() + " is shorter than its"
+						+ " checkpoint, starting over");
+				committed = 0;
+				break;
+			}
+		}
+		for (Map.Entry<String, File> output : outputs.entrySet()) {
+			truncate(output.getValue(), committed > 0 ? Long.parseLong(progress
+					.getProperty("bytes." + output.getKey())) : 0);
+		}
+		committedRows = committed;
+		lastCheckpointRows = committed;
+		return committed;
+	}
+
+	private static void truncate(File file, long length) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try {
+			if (output.length() > length) {
+				output.setLength(length);
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	public long getCommittedRows() {
+		return committedRows;
+	}
+
+	/**
+	 * Records that the given number of input rows has been written, saving a
+	 * checkpoint when enough rows have been written since the last one.
+	 */
+	public void rowsWritten(long rows, Map<String, CsvWriter> writers)
+			throws IOException {
+		committedRows = rows;
+		if (rows - lastCheckpointRows >= everyRows) {
+			save(writers);
+		}
+	}
+
+	/**
+	 * Forces the writers and the translation memory to the disk and saves
+	 * the progress file, itself forced before it replaces the previous one
+	 * atomically. A checkpoint then never claims more than is on the disk,
+	 * and a crash never leaves a half written one.
+	 */
+	public void save(Map<String, CsvWriter> writers) throws IOException {
+		if (memory != null) {
+			memory.force();
+		}
+		Properties progress = new Properties();
+		for (Map.Entry<String, CsvWriter> writer : writers.entrySet()) {
+			String language = writer.getKey();
+			writer.getValue().force();
+			progress.setProperty("rows." + language,
+					String.valueOf(committedRows));
+			progress.setProperty("bytes." + language,
+					String.valueOf(outputs.get(language).length()));
+		}
+
+		File temporary = new File(progressFile.getPath() + ".tmp");
+		FileOutputStream output = new FileOutputStream(temporary);
+		try {
+			progress.store(output, "TranslatorApp progress");
+			output.getFD().sync();
+		} finally {
+			output.close();
+		}
+		Files.move(temporary.toPath(), progressFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		lastCheckpointRows = committedRows;
+	}
+}
@@ -1,6 +1,9 @@
 package com.techstorm;
 
 import java.util.List;
+import java.util.logging.Level;
+
+import com.translator.google.translator.OnlineGoogleTranslator;
 
 public class Config {
 	public boolean useGoogle = false;
@@ -12,4 +15,79 @@ public class Config {
 	public String fromLanguage;
 	public String toLanguageBing;
 	public List<String> toLanguages;
+	/**
+	 * languageMode=chained translates every language from the previous one,
+	 * languageMode=fanout translates all of them from fromLanguage in parallel
+	 */
+	public boolean chainLanguages = true;
+	public int threads = 1;
+	public int batchSize = 1;
+	/**
+	 * most characters sent in one request, larger batches are split; a
+	 * longer text goes alone. 0 for no limit
+	 */
+	public int charactersPerRequest = 5000;
+	public String translationMemory;
+	public int cacheMegabytes = 64;
+	public int connectTimeout = OnlineGoogleTranslator.DEFAULT_CONNECT_TIMEOUT;
+	public int readTimeout = OnlineGoogleTranslator.DEFAULT_READ_TIMEOUT;
+	/** seconds an account is left out of rotation after a quota error */
+	public int accountCooldown = 300;
+	/** rate limits per provider and per key, zero for none */
+	public double googleRequestsPerSecond;
+	public double googleCharactersPerSecond;
+	public double googleKeyRequestsPerSecond;
+	public double googleKeyCharactersPerSecond;
+	public double bingRequestsPerSecond;
+	public double bingCharactersPerSecond;
+	public double bingKeyRequestsPerSecond;
+	public double bingKeyCharactersPerSecond;
+	/** attempts per batch, and the backoff between them in milliseconds */
+	public int retryAttempts = 4;
+	public long retryDelay = 1000;
+	public long retryMaxDelay = 30000;
+	/** input rows between two checkpoints of the progress file */
+	public int checkpointRows = 1000;
+	/** translate every distinct value once in a pre-pass */
+	public boolean dedupe = false;
+	/** translate cells segment by segment, keeping the markup between them */
+	public boolean segment = false;
+	/**
+	 * split --shard runs by a hash of the row number instead of by byte
+	 * ranges of the input
+	 */
+	public boolean shardByHash = false;
+	/** write the outputs gzip compressed, as name_language.csv.gz */
+	public boolean gzip = false;
+	/**
+	 * one based column that identifies a row across runs, like aff_code; when
+	 * set only the rows that are new or changed since the previous run are
+	 * translated, see {@link Delta}. 0 to translate every row
+	 */
+	public int deltaKey = 0;
+	/** keep tags, entities, URLs, model numbers and measures out of requests */
+	public boolean mask = false;
+	/**
+	 * translate offline with {@link LocalTranslationProvider}, every request
+	 * taking localLatency plus up to localJitter milliseconds
+	 */
+	public boolean localProvider = false;
+	public long localLatency = 50;
+	public long localJitter = 0;
+	/**
+	 * scheme, host and port to send the requests to instead of the real
+	 * services, like a mock server; null for the real ones
+	 */
+	public String googleEndpoint;
+	public String bingEndpoint;
+	/** seconds between two metrics reports, 0 for a report at the end only */
+	public int metricsInterval = 0;
+	/** file the metrics reports are appended to, null for none */
+	public String metricsCsv;
+	/** lowest level logged: SEVERE, WARNING, INFO, FINE, ... */
+	public Level logLevel = Level.INFO;
+	/** file the log is appended to, null for the console */
+	public String logFile;
+	/** log every request sent to Google, whatever the level */
+	public boolean logPayloads = false;
 }
@@ -0,0 +1,215 @@
+package com.techstorm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a UTF-8 CSV file as described in RFC 4180 through a memory mapped
+ * window. Fields may be quoted, a quoted field may hold commas, line breaks
+ * and quotes doubled as "". Records end with CRLF, LF or CR, a byte order
+ * mark at the start is skipped.
+ * <p>
+ * Nothing is copied or decoded while reading: every {@link CsvRecord} is a
+ * view of its bytes in the window plus the bounds of its fields. Files larger
+ * than the window are mapped window by window, a record must fit in one.
+ */
+public class CsvReader implements Closeable {
+
+	/** bytes mapped at a time, the longest record that can be read */
+	private static final long WINDOW_BYTES = 256L * 1024 * 1024;
+
+	private final FileChannel channel;
+	private final long size;
+	private final long windowBytes;
+	private ByteBuffer window;
+	private long windowStart;
+	/** start of the next record in the window */
+	private int position;
+	/** field bounds of the record being scanned, two ints per field */
+	private int[] bounds = new int[32];
+	private int fields;
+	private int recordStart;
+	private int recordEnd;
+	/** records starting at or after this offset are not read */
+	private long end = Long.MAX_VALUE;
+
+	public CsvReader(File file) throws IOException {
+		this(file, WINDOW_BYTES);
+	}
+
+	CsvReader(File file, long windowBytes) throws IOException {
+		this.channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+		this.size = channel.size();
+		this.windowBytes = windowBytes;
+		map(0);
+		skipByteOrderMark();
+	}
+
+	/**
+	 * Reads records from bytes in memory.
+	 */
+	public CsvReader(ByteBuffer bytes) {
+		this.channel = null;
+		this.window = bytes.slice();
+		this.size = window.limit();
+		this.windowBytes = size;
+		skipByteOrderMark();
+	}
+
+	private void skipByteOrderMark() {
+		if (window.limit() >= 3 && (window.get(0) & 0xFF) == 0xEF
+				&& (window.get(1) & 0xFF) == 0xBB
+				&& (window.get(2) & 0xFF) == 0xBF) {
+			position = 3;
+		}
+	}
+
+	/**
+	 * Maps the window starting at the given offset of the file.
+	 */
+	private void map(long start) throws IOException {
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start,
+				Math.min(windowBytes, size - start));
+		windowStart = start;
+		position = 0;
+	}
+
+	/**
+	 * Limits reading to the records that start in the given byte range of the
+	 * file, skipping the records before it. Finding the first record means
+	 * scanning the ones before it, as a line break may be inside a quoted
+	 * field, but they are neither decoded nor copied.
+	 *
+	 * @param from offset of the first byte of the range
+	 * @param to offset after the last byte of the range
+	 */
+	public void range(long from, long to) throws IOException {
+		while (windowStart + position < from && advance()) {
+			// skip
+		}
+		end = to;
+	}
+
+	/**
+	 * @return the next record, null at the end of the file or the range
+	 */
+	public CsvRecord next() throws IOException {
+		if (!advance()) {
+			return null;
+		}
+		ByteBuffer record = window.duplicate();
+		record.limit(recordEnd);
+		record.position(recordStart);
+		int[] recordBounds = Arrays.copyOf(bounds, 2 * fields);
+		for (int index = 0; index < recordBounds.length; index++) {
+			recordBounds[index] -= recordStart;
+		}
+		return new CsvRecord(record.slice(), recordBounds);
+	}
+
+	/**
+	 * @return the offset in the file of the record {@link #next()} returned
+	 *         last
+	 */
+	public long getOffset() {
+		return windowStart + recordStart;
+	}
+
+	/**
+	 * Scans the next record, leaving its bounds in the fields.
+	 *
+	 * @return false at the end of the file or the range
+	 */
+	private boolean advance() throws IOException {
+		while (windowStart + position < Math.min(size, end)) {
+			int next = scan(position);
+			if (next >= 0) {
+				recordStart = position;
+				position = next;
+				return true;
+			}
+			if (position == 0 || channel == null) {
+				throw new IOException("The record at byte "
+						+ (windowStart + position) + " is longer than "
+						+ windowBytes + " bytes");
+			}
+			// the record runs past the window, map the next one from its start
+			map(windowStart + position);
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the fields of the record starting at the given position.
+	 *
+	 * @return the start of the following record, -1 when the record does not
+	 *         end inside the window
+	 */
+	private int scan(int start) {
+		int limit = window.limit();
+		boolean lastWindow = windowStart + limit >= size;
+		fields = 0;
+		int fieldStart = start;
+		boolean quoted = false;
+		for (int index = start; index < limit; index++) {
+			byte b = window.get(index);
+			if (quoted) {
+				if (b == '"') {
+					if (index + 1 < limit) {
+						if (window.get(index + 1) == '"') {
+							index++;
+						} else {
+							quoted = false;
+						}
+					} else if (!lastWindow) {
+						return -1;
+					}
+				}
+			} else if (b == '"' && index == fieldStart) {
+				quoted = true;
+			} else if (b == ',') {
+				addField(fieldStart, index);
+				fieldStart = index + 1;
+			} else if (b == '\n' || b == '\r') {
+				addField(fieldStart, index);
+				recordEnd = index;
+				if (b == '\r') {
+					if (index + 1 >= limit && !lastWindow) {
+						return -1;
+					}
+					if (index + 1 < limit && window.get(index + 1) == '\n') {
+						index++;
+					}
+				}
+				return index + 1;
+			}
+		}
+		if (!lastWindow) {
+			return -1;
+		}
+		addField(fieldStart, limit);
+		recordEnd = limit;
+		return limit;
+	}
+
+	private void addField(int start, int end) {
+		if (2 * fields + 2 > bounds.length) {
+			bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+		}
+		bounds[2 * fields] = start;
+		bounds[2 * fields + 1] = end;
+		fields++;
+	}
+
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package com.techstorm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One record of a CSV file read by {@link CsvReader}. The record is a view of
+ * its bytes in the mapped file plus the bounds of every field, nothing is
+ * decoded until {@link #get(int)} asks for a field. Fields that are only
+ * passed through keep their raw bytes, quotes included, see
+ * {@link #getRaw(int)}.
+ */
+public class CsvRecord {
+
+	private final ByteBuffer bytes;
+	/** start and end of every raw field in bytes, two ints per field */
+	private final int[] bounds;
+
+	CsvRecord(ByteBuffer bytes, int[] bounds) {
+		this.bytes = bytes;
+		this.bounds = bounds;
+	}
+
+	/**
+	 * A record of the given values, for input that does not come from a file.
+	 */
+	public static CsvRecord of(String... values) {
+		StringBuilder line = new StringBuilder();
+		for (int index = 0; index < values.length; index++) {
+			if (index > 0) {
+				line.append(',');
+			}
+			appendField(line, values[index]);
+		}
+		try {
+			return new CsvReader(ByteBuffer.wrap(line.toString().getBytes(
+					StandardCharsets.UTF_8))).next();
+		} catch (IOException e) {
+			// bytes in memory are never too long for their window
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Appends a value as a CSV field, quoted when it holds a comma, a quote
+	 * or a line break. Null is written as an empty field.
+	 */
+	public static void appendField(StringBuilder line, String value) {
+		if (value == null) {
+			return;
+		}
+		boolean quote = false;
+		for (int index = 0; index < value.length() && !quote; index++) {
+			char c = value.charAt(index);
+			quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+		}
+		if (!quote) {
+			line.append(value);
+			return;
+		}
+		line.append('"');
+		int start = 0;
+		for (int at = value.indexOf('"'); at >= 0; at = value
+				.indexOf('"', start)) {
+			line.append(value, start, at + 1).append('"');
+			start = at + 1;
+		}
+		line.append(value, start, value.length()).append('"');
+	}
+
+	public int size() {
+		return bounds.length / 2;
+	}
+
+	/**
+	 * The field without its quotes, decoded from UTF-8.
+	 */
+	public String get(int index) {
+		int start = bounds[2 * index];
+		int end = bounds[2 * index + 1];
+		byte[] field = new byte[end - start];
+		int length = 0;
+		boolean quoted = false;
+		for (int position = start; position < end; position++) {
+			byte b = bytes.get(position);
+			if (b != '"') {
+				field[length++] = b;
+			} else if (position == start) {
+				quoted = true;
+			} else if (quoted && position + 1 < end
+					&& bytes.get(position + 1) == '"') {
+				// an escaped quote
+				field[length++] = b;
+				position++;
+			} else if (quoted) {
+				quoted = false;
+			} else {
+				field[length++] = b;
+			}
+		}
+		return new String(field, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The field as it is in the file, quotes included. The buffer is a view of
+	 * the file, no bytes are copied.
+	 */
+	public ByteBuffer getRaw(int index) {
+		ByteBuffer raw = bytes.duplicate();
+		raw.limit(bounds[2 * index + 1]);
+		raw.position(bounds[2 * index]);
+		return raw;
+	}
+
+	/**
+	 * The whole record as it is in the file, without its line break. The
+	 * buffer is a view of the file, no bytes are copied.
+	 */
+	public ByteBuffer getBytes() {
+		return bytes.duplicate();
+	}
+}
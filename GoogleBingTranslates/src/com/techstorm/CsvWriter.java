@@ -0,0 +1,229 @@
+package com.techstorm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes CSV rows field by field into a large buffer that goes to a channel
+ * once it is full, without building a line first. Text fields are encoded
+ * to UTF-8 straight into the buffer and quoted as RFC 4180 asks for when
+ * they hold a comma, a quote or a line break. Raw fields, like those
+ * {@link CsvRecord#getRaw(int)} returns, are copied as they are.
+ * <p>
+ * With gzip the output is a series of gzip members, one per
+ * {@link #flush()}, so a file cut at a flush is still a valid gzip file and
+ * can be appended to.
+ */
+public class CsvWriter implements Closeable {
+
+	private static final int BUFFER_BYTES = 1024 * 1024;
+
+	private final WritableByteChannel channel;
+	private final boolean gzip;
+	private final ByteBuffer buffer;
+	/** a text field is encoded here and then copied in one go */
+	private byte[] scratch = new byte[1024];
+	/** the current gzip member, null until something is written */
+	private GZIPOutputStream member;
+	private boolean firstField = true;
+
+	public CsvWriter(WritableByteChannel channel, boolean gzip) {
+		this.channel = channel;
+		this.gzip = gzip;
+		// the deflater reads from arrays, a direct buffer saves the copy
+		// only when the channel takes the bytes as they are
+		buffer = gzip ? ByteBuffer.allocate(BUFFER_BYTES) : ByteBuffer
+				.allocateDirect(BUFFER_BYTES);
+	}
+
+	/**
+	 * Opens a writer on the file.
+	 *
+	 * @param append whether to write after the current content, otherwise
+	 *        the file is emptied
+	 */
+	public static CsvWriter open(File file, boolean append, boolean gzip)
+			throws IOException {
+		FileChannel channel = append ? FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND) : FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		return new CsvWriter(channel, gzip);
+	}
+
+	/**
+	 * Writes a text field, null as an empty one.
+	 */
+	public void writeField(String value) throws IOException {
+		separate();
+		if (value == null) {
+			return;
+		}
+		int length = value.length();
+		// quotes, doubled quotes and up to three bytes per char
+		if (scratch.length < 3 * length + 2) {
+			scratch = new byte[3 * length + 2];
+		}
+		boolean quote = false;
+		int size = 1;
+		for (int index = 0; index < length; index++) {
+			char c = value.charAt(index);
+			if (c < 0x80) {
+				if (c == '"') {
+					scratch[size++] = '"';
+					quote = true;
+				} else if (c == ',' || c == '\r' || c == '\n') {
+					quote = true;
+				}
+				scratch[size++] = (byte) c;
+			} else if (c < 0x800) {
+				scratch[size++] = (byte) (0xC0 | c >> 6);
+				scratch[size++] = (byte) (0x80 | c & 0x3F);
+			} else if (Character.isHighSurrogate(c) && index + 1 < length
+					&& Character.isLowSurrogate(value.charAt(index + 1))) {
+				int codePoint = Character.toCodePoint(c,
+						value.charAt(++index));
+				scratch[size++] = (byte) (0xF0 | codePoint >> 18);
+				scratch[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+				scratch[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+				scratch[size++] = (byte) (0x80 | codePoint & 0x3F);
+			} else if (Character.isSurrogate(c)) {
+				scratch[size++] = '?';
+			} else {
+				scratch[size++] = (byte) (0xE0 | c >> 12);
+				scratch[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+				scratch[size++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+		if (quote) {
+			scratch[0] = '"';
+			scratch[size++] = '"';
+			put(scratch, 0, size);
+		} else {
+			put(scratch, 1, size - 1);
+		}
+	}
+
+	/**
+	 * Writes a field that is already CSV, quotes included if it has any.
+	 */
+	public void writeRaw(ByteBuffer field) throws IOException {
+		separate();
+		if (field.remaining() > buffer.remaining()) {
+			drain();
+			if (field.remaining() > buffer.capacity()) {
+				write(field);
+				return;
+			}
+		}
+		buffer.put(field);
+	}
+
+	/**
+	 * Ends the current row.
+	 */
+	public void endRow() throws IOException {
+		put((byte) '\n');
+		firstField = true;
+	}
+
+	private void separate() throws IOException {
+		if (firstField) {
+			firstField = false;
+		} else {
+			put((byte) ',');
+		}
+	}
+
+	private void put(byte b) throws IOException {
+		if (!buffer.hasRemaining()) {
+			drain();
+		}
+		buffer.put(b);
+	}
+
+	private void put(byte[] bytes, int offset, int length) throws IOException {
+		if (length > buffer.remaining()) {
+			drain();
+			if (length > buffer.capacity()) {
+				write(ByteBuffer.wrap(bytes, offset, length));
+				return;
+			}
+		}
+		buffer.put(bytes, offset, length);
+	}
+
+	/**
+	 * Hands the buffer to the channel, through the gzip member if any.
+	 */
+	private void drain() throws IOException {
+		buffer.flip();
+		write(buffer);
+		buffer.clear();
+	}
+
+	private void write(ByteBuffer bytes) throws IOException {
+		if (!bytes.hasRemaining()) {
+			return;
+		}
+		if (!gzip) {
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			return;
+		}
+		if (member == null) {
+			// finishing a member leaves the channel open for the next one
+			member = new GZIPOutputStream(Channels.newOutputStream(channel),
+					BUFFER_BYTES / 16);
+		}
+		if (bytes.hasArray()) {
+			member.write(bytes.array(), bytes.arrayOffset()
+					+ bytes.position(), bytes.remaining());
+			bytes.position(bytes.limit());
+		} else {
+			byte[] copy = new byte[bytes.remaining()];
+			bytes.get(copy);
+			member.write(copy);
+		}
+	}
+
+	/**
+	 * Writes everything buffered to the channel and ends the gzip member, so
+	 * the output is complete up to here.
+	 */
+	public void flush() throws IOException {
+		drain();
+		if (member != null) {
+			member.finish();
+			member = null;
+		}
+	}
+
+	/**
+	 * Flushes and then forces the file to the disk, so what was written
+	 * survives a crash of the machine.
+	 */
+	public void force() throws IOException {
+		flush();
+		if (channel instanceof FileChannel) {
+			((FileChannel) channel).force(false);
+		}
+	}
+
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+}
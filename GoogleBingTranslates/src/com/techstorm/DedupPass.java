@@ -0,0 +1,124 @@
+package com.techstorm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Pre-pass over the input that translates every distinct value of the
+ * configured columns once. Values are submitted in batches as the input is
+ * read and only a {@link TranslationKey} of every value seen is kept, so the
+ * pass costs the same memory for short and long values. The translations end
+ * up in the translation memory, so the pass that writes the outputs finds all
+ * of them there.
+ */
+public class DedupPass {
+
+	/** how many batches may be in flight per worker */
+	private static final int PENDING_BATCHES_PER_THREAD = 4;
+
+	private final Config config;
+	/** whether a column is read, by zero based index */
+	private final boolean[] columns;
+	private final TranslationEngine.BatchTranslator translator;
+	private final int batchSize;
+	private final int maxPending;
+	/** keys of the distinct values seen so far */
+	private final Set<TranslationKey> seen = new HashSet<TranslationKey>();
+	private final Deque<CompletableFuture<?>> pending = new ArrayDeque<CompletableFuture<?>>();
+	private List<String> batch;
+	private long cells;
+	/** distinct values submitted so far, numbers them in correlation ids */
+	private long distinct;
+
+	public DedupPass(Config config, List<Integer> columnIndexes,
+			TranslationEngine.BatchTranslator translator) {
+		this.config = config;
+		this.columns = TranslationEngine.columnMask(columnIndexes);
+		this.translator = translator;
+		this.batchSize = Math.max(1, config.batchSize);
+		this.maxPending = Math.max(1, config.threads)
+				* PENDING_BATCHES_PER_THREAD;
+		this.batch = new ArrayList<String>(batchSize);
+	}
+
+	/**
+	 * Adds the values of the configured columns of a row that were not seen
+	 * before to the current batch and submits the batch once it is full.
+	 * Blocks while too many batches are still in flight.
+	 */
+	public void submit(CsvRecord record) {
+		int width = Math.min(record.size(), columns.length);
+		for (int index = 0; index < width; index++) {
+			if (!columns[index]) {
+				continue;
+			}
+			String value = record.get(index);
+			if (value == null || value.trim().isEmpty()) {
+				continue;
+			}
+			cells++;
+			if (!seen.add(TranslationKey.of("", value, "", ""))) {
+				continue;
+			}
+			batch.add(value);
+			if (batch.size() == batchSize) {
+				translateBatch();
+				while (pending.size() > maxPending) {
+					pending.poll().join();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Submits the last partial batch and waits until every batch is
+	 * translated.
+	 */
+	public void finish() {
+		if (!batch.isEmpty()) {
+			translateBatch();
+		}
+		while (!pending.isEmpty()) {
+			pending.poll().join();
+		}
+	}
+
+	private void translateBatch() {
+		String correlationId = "dedup " + (distinct + 1) + "-"
+				+ (distinct + batch.size());
+		distinct += batch.size();
+		if (!config.toLanguages.isEmpty()) {
+			pending.add(CompletableFuture.allOf(TranslationEngine
+					.translateAll(config, translator, batch, correlationId)));
+		}
+		batch = new ArrayList<String>(batchSize);
+	}
+
+	/**
+	 * Cells of the configured columns that are not blank.
+	 */
+	public long getCells() {
+		return cells;
+	}
+
+	public long getDistinctValues() {
+		return distinct + batch.size();
+	}
+
+	@Override
+	public String toString() {
+		int languages = config.toLanguages.size();
+		long distinct = getDistinctValues();
+		long requestsSaved = (cells + batchSize - 1) / batchSize
+				- (distinct + batchSize - 1) / batchSize;
+		return "Dedup: " + cells + " cells, " + distinct
+				+ " distinct values, saved " + (cells - distinct) * languages
+				+ " translations and about " + requestsSaved * languages
+				+ " requests";
+	}
+}
@@ -0,0 +1,340 @@
+package com.techstorm;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Delta mode for feeds that are exported again every day with few rows
+ * changed. Every row is fingerprinted by its value in the key column, see
+ * {@link Config#deltaKey}, and a hash of all its bytes, and a run keeps the
+ * fingerprints of its rows in a manifest next to the outputs. The next run
+ * looks every row up in that manifest: a row with the same key and hash is
+ * copied from the previous outputs as it was written there, only new and
+ * changed rows are translated. Rows that are gone from the input are gone
+ * from the outputs.
+ * <p>
+ * The outputs and the manifest are written to staging files next to them and
+ * checkpointed like any output. {@link #commit()} moves them over the
+ * previous ones once the run is complete, so a run that dies leaves the
+ * previous outputs as they were and can be resumed.
+ */
+public class Delta implements Closeable {
+	private static final Logger LOG = Logger.getLogger(Delta.class.getName());
+
+	/** the manifest among the outputs and the writers */
+	public static final String MANIFEST = "manifest";
+
+	private static final String STAGING_SUFFIX = ".delta";
+
+	/** zero based */
+	private final int keyColumn;
+	private final boolean gzip;
+	/** hash of the settings, rows translated with other ones do not match */
+	private final long seed;
+	/** the outputs by language and the manifest */
+	private final Map<String, File> targets;
+	/** row in the previous outputs of every key of the previous manifest */
+	private final Map<String, Integer> previousRows = new HashMap<String, Integer>();
+	private long[] previousHashes = new long[0];
+	private final Map<String, PreviousOutput> previousOutputs = new HashMap<String, PreviousOutput>();
+	/** previous rows whose key has been read again */
+	private final BitSet seen = new BitSet();
+	private ByteBuffer copy = ByteBuffer.allocate(64 * 1024);
+	private long unchanged;
+	private long changed;
+	private long added;
+
+	/**
+	 * @param targets
+	 *            the output file of every language and the manifest file
+	 */
+	public Delta(Config config, Map<String, File> targets) {
+		this.keyColumn = config.deltaKey - 1;
+		this.gzip = config.gzip;
+		this.targets = targets;
+		// what decides the translations, from the languages and columns to
+		// the providers and where their requests go
+		StringBuilder settings = new StringBuilder();
+		settings.append(config.fromLanguage).append('|')
+				.append(config.toLanguages).append('|')
+				.append(config.toLanguageBing).append('|')
+				.append(config.columns).append('|')
+				.append(config.chainLanguages).append('|').append(config.mask)
+				.append('|').append(config.segment).append('|')
+				.append(config.useGoogle).append('|').append(config.useBing)
+				.append('|').append(config.localProvider).append('|')
+				.append(config.googleEndpoint).append('|')
+				.append(config.bingEndpoint);
+		seed = hash(0xCBF29CE484222325L, ByteBuffer.wrap(settings.toString()
+				.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * The staging file of every output and of the manifest, what the run
+	 * writes to.
+	 */
+	public Map<String, File> getStagingFiles() {
+		Map<String, File> staging = new HashMap<String, File>();
+		for (Map.Entry<String, File> target : targets.entrySet()) {
+			staging.put(target.getKey(), new File(target.getValue().getPath()
+					+ STAGING_SUFFIX));
+		}
+		return staging;
+	}
+
+	/**
+	 * Reads the previous manifest and finds where every row starts in the
+	 * previous outputs. Without a manifest, or with outputs that do not
+	 * match it, every row is translated.
+	 */
+	public void load() throws IOException {
+		File manifest = targets.get(MANIFEST);
+		if (!manifest.exists()) {
+			LOG.info("No manifest " + manifest + " yet, translating every row");
+			return;
+		}
+		int rows = readManifest(manifest);
+		for (Map.Entry<String, File> target : targets.entrySet()) {
+			if (target.getKey().equals(MANIFEST)) {
+				continue;
+			}
+			PreviousOutput previous = target.getValue().exists() ? index(target
+					.getValue()) : null;
+			if (previous != null) {
+				previousOutputs.put(target.getKey(), previous);
+			}
+			if (previous == null || previous.rows != rows) {
+				LOG.warning("The previous output " + target.getValue()
+						+ " does not match the manifest, translating every row");
+				close();
+				previousRows.clear();
+				previousHashes = new long[0];
+				return;
+			}
+		}
+		LOG.info("Read " + rows + " rows from the manifest " + manifest);
+	}
+
+	private int readManifest(File manifest) throws IOException {
+		File unpacked = gzip ? Shard.gunzip(manifest) : null;
+		CsvReader reader = new CsvReader(unpacked != null ? unpacked
+				: manifest);
+		try {
+			int rows = 0;
+			CsvRecord record;
+			while ((record = reader.next()) != null) {
+				if (rows == previousHashes.length) {
+					previousHashes = Arrays.copyOf(previousHashes,
+							Math.max(1024, 2 * rows));
+				}
+				previousHashes[rows] = Long.parseUnsignedLong(record.get(1), 16);
+				previousRows.put(record.get(0), rows);
+				rows++;
+			}
+			return rows;
+		} finally {
+			reader.close();
+			if (unpacked != null) {
+				unpacked.delete();
+			}
+		}
+	}
+
+	/**
+	 * Notes where every row of a previous output starts and how long it is.
+	 */
+	private PreviousOutput index(File output) throws IOException {
+		PreviousOutput previous = new PreviousOutput();
+		File file = output;
+		if (gzip) {
+			// the rows are read back at their offsets in the plain file
+			previous.unpacked = Shard.gunzip(output);
+			file = previous.unpacked;
+		}
+		CsvReader reader = new CsvReader(file);
+		try {
+			CsvRecord record;
+			while ((record = reader.next()) != null) {
+				if (previous.rows == previous.offsets.length) {
+					int capacity = Math.max(1024, 2 * previous.rows);
+					previous.offsets = Arrays.copyOf(previous.offsets, capacity);
+					previous.lengths = Arrays.copyOf(previous.lengths, capacity);
+				}
+				previous.offsets[previous.rows] = reader.getOffset();
+				previous.lengths[previous.rows] = record.getBytes().remaining();
+				previous.rows++;
+			}
+		} finally {
+			reader.close();
+		}
+		previous.channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+		return previous;
+	}
+
+	/**
+	 * Fingerprints an input row and looks it up in the previous manifest. To
+	 * be called once per row, in input order.
+	 */
+	public Fingerprint fingerprint(CsvRecord record) {
+		String key = keyColumn < record.size() ? record.get(keyColumn) : "";
+		long hash = hash(seed, record.getBytes());
+		Integer row = previousRows.get(key);
+		int previousRow = -1;
+		if (row == null) {
+			added++;
+		} else {
+			seen.set(row);
+			if (previousHashes[row] == hash) {
+				unchanged++;
+				previousRow = row;
+			} else {
+				changed++;
+			}
+		}
+		return new Fingerprint(key, hash, previousRow);
+	}
+
+	/**
+	 * Whether the row is in the previous outputs as it is, without counting
+	 * it.
+	 */
+	public boolean isUnchanged(CsvRecord record) {
+		String key = keyColumn < record.size() ? record.get(keyColumn) : "";
+		Integer row = previousRows.get(key);
+		return row != null && previousHashes[row] == hash(seed,
+				record.getBytes());
+	}
+
+	/**
+	 * Writes a row of the previous output of the language as a row of the
+	 * new one.
+	 */
+	public void copy(String language, int row, CsvWriter out)
+			throws IOException {
+		PreviousOutput previous = previousOutputs.get(language);
+		int length = previous.lengths[row];
+		if (copy.capacity() < length) {
+			copy = ByteBuffer.allocate(Math.max(length, 2 * copy.capacity()));
+		}
+		copy.clear();
+		copy.limit(length);
+		long offset = previous.offsets[row];
+		while (copy.hasRemaining()) {
+			if (previous.channel.read(copy, offset + copy.position()) < 0) {
+				throw new EOFException("Row " + row + " of the previous "
+						+ language + " output is cut short");
+			}
+		}
+		copy.flip();
+		out.writeRaw(copy);
+		out.endRow();
+	}
+
+	/**
+	 * Moves the staging files over the outputs and the manifest. The caller
+	 * removes the checkpoint of the staging files first, so a run that dies
+	 * here is not resumed into outputs that were already replaced; it starts
+	 * over. The old manifest goes next, a crash half way through then leaves
+	 * outputs without a manifest, which the next run translates again,
+	 * instead of a manifest that does not describe them.
+	 */
+	public void commit() throws IOException {
+		close();
+		Map<String, File> staging = getStagingFiles();
+		File manifest = targets.get(MANIFEST);
+		Files.deleteIfExists(manifest.toPath());
+		for (Map.Entry<String, File> target : targets.entrySet()) {
+			if (!target.getKey().equals(MANIFEST)) {
+				move(staging.get(target.getKey()), target.getValue());
+			}
+		}
+		move(staging.get(MANIFEST), manifest);
+	}
+
+	private static void move(File from, File to) throws IOException {
+		Files.move(from.toPath(), to.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Closes the previous outputs and deletes their unpacked copies.
+	 */
+	public void close() throws IOException {
+		for (PreviousOutput previous : previousOutputs.values()) {
+			previous.channel.close();
+			if (previous.unpacked != null) {
+				previous.unpacked.delete();
+			}
+		}
+		previousOutputs.clear();
+	}
+
+	/**
+	 * 64 bit FNV-1a, a manifest row costs the same for any length of row.
+	 */
+	private static long hash(long seed, ByteBuffer bytes) {
+		long hash = seed;
+		for (int index = bytes.position(); index < bytes.limit(); index++) {
+			hash ^= bytes.get(index) & 0xFF;
+			hash *= 0x100000001B3L;
+		}
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		long removed = previousRows.size() - seen.cardinality();
+		return "Delta: " + unchanged + " rows unchanged, " + changed
+				+ " changed, " + added + " new, " + removed + " removed";
+	}
+
+	/**
+	 * The fingerprint of an input row, written to the manifest.
+	 */
+	public static class Fingerprint {
+		final String key;
+		final long hash;
+		/** the row in the previous outputs, -1 when it has to be translated */
+		final int previousRow;
+
+		Fingerprint(String key, long hash, int previousRow) {
+			this.key = key;
+			this.hash = hash;
+			this.previousRow = previousRow;
+		}
+
+		public boolean isUnchanged() {
+			return previousRow >= 0;
+		}
+
+		void write(CsvWriter manifest) throws IOException {
+			manifest.writeField(key);
+			manifest.writeField(Long.toHexString(hash));
+			manifest.endRow();
+		}
+	}
+
+	private static class PreviousOutput {
+		int rows;
+		long[] offsets = new long[0];
+		int[] lengths = new int[0];
+		FileChannel channel;
+		/** the plain copy of a gzip output, null for a plain one */
+		File unpacked;
+	}
+}
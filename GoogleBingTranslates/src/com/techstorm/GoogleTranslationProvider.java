@@ -0,0 +1,110 @@
+package com.techstorm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import com.translator.google.core.Translation;
+import com.translator.google.translator.OnlineGoogleTranslator;
+import com.translator.google.translator.OnlineGoogleTranslator.Language;
+
+/**
+ * Google Translate v2 through {@link OnlineGoogleTranslator}, one translator
+ * per API key.
+ */
+public class GoogleTranslationProvider implements TranslationProvider {
+
+	/** Google v2 accepts at most 128 q parameters per request */
+	private static final int MAX_TEXTS_PER_REQUEST = 128;
+
+	private final AccountPool<OnlineGoogleTranslator> translators;
+	private final RetryPolicy retryPolicy;
+	private final Metrics metrics;
+	/** waits for the rate limits, so the caller never blocks */
+	private final Executor executor;
+
+	public GoogleTranslationProvider(
+			AccountPool<OnlineGoogleTranslator> translators,
+			RetryPolicy retryPolicy, Metrics metrics, Executor executor) {
+		this.translators = translators;
+		this.retryPolicy = retryPolicy;
+		this.metrics = metrics;
+		this.executor = executor;
+	}
+
+	public String getName() {
+		return "google";
+	}
+
+	public int getMaxTextsPerRequest() {
+		return MAX_TEXTS_PER_REQUEST;
+	}
+
+	public CompletableFuture<List<String>> translateAsync(List<String> texts,
+			String fromLanguage, String toLanguage) {
+		Language sourceLanguage = getLanguage(fromLanguage);
+		Language targetLanguage = getLanguage(toLanguage);
+
+		CompletableFuture<List<Translation>> translated = retryPolicy
+				.execute(() -> translate(texts, sourceLanguage, targetLanguage,
+						translators.size()));
+		return translated.thenApply(translations -> {
+			List<String> result = new ArrayList<String>(translations.size());
+			for (Translation translation : translations) {
+				result.add(translation.getTranslatedText());
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * Moves on to the next account of the pool when one runs out of quota,
+	 * at most {@code attempts} accounts are tried.
+	 */
+	private CompletableFuture<List<Translation>> translate(List<String> texts,
+			Language sourceLanguage, Language targetLanguage, int attempts) {
+		AccountPool.Member<OnlineGoogleTranslator> member = translators.next();
+		CompletableFuture<Void> permitted = new CompletableFuture<Void>();
+		executor.execute(() -> {
+			try {
+				translators.acquire(member,
+						TranslationProvider.countCharacters(texts));
+				permitted.complete(null);
+			} catch (Throwable e) {
+				permitted.completeExceptionally(e);
+			}
+		});
+		return permitted
+				.thenCompose(permit -> member.client.translateBatchAsync(
+						texts, sourceLanguage, targetLanguage))
+				.handle((translations, failure) -> {
+					if (failure == null) {
+						return CompletableFuture.completedFuture(translations);
+					}
+					metrics.requestFailed(member.account.username, failure);
+					if (AccountPool.isQuotaError(failure)) {
+						translators.bench(member);
+						if (attempts > 1) {
+							return translate(texts, sourceLanguage,
+									targetLanguage, attempts - 1);
+						}
+					}
+					CompletableFuture<List<Translation>> failed = new CompletableFuture<List<Translation>>();
+					failed.completeExceptionally(failure);
+					return failed;
+				}).thenCompose(future -> future);
+	}
+
+	private static Language getLanguage(String languageString) {
+		Language result = Language.ENGLISH;
+		for (Language lang : Language.values()) {
+			if (languageString.equalsIgnoreCase(lang.name())
+					|| languageString.equalsIgnoreCase(lang.value)) {
+				result = lang;
+			}
+
+		}
+		return result;
+	}
+}
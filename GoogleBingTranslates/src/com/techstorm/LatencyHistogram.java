@@ -0,0 +1,73 @@
+package com.techstorm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies in microseconds. Every power of two is
+ * split into 16 buckets, so a percentile is off by at most about 3% while
+ * the histogram stays a fixed, small array.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+
+	public void record(long nanos) {
+		counts.incrementAndGet(index(Math.max(0,
+				TimeUnit.NANOSECONDS.toMicros(nanos))));
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (int index = 0; index < counts.length(); index++) {
+			count += counts.get(index);
+		}
+		return count;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the latency in milliseconds, 0 when nothing was recorded
+	 */
+	public double getPercentileMillis(double percentile) {
+		long total = getCount();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int index = 0; index < counts.length(); index++) {
+			seen += counts.get(index);
+			if (seen >= rank) {
+				return middle(index) / 1000.0;
+			}
+		}
+		return middle(counts.length() - 1) / 1000.0;
+	}
+
+	private static int index(long micros) {
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent < SUB_BUCKET_BITS) {
+			// small values get a bucket each
+			return (int) micros;
+		}
+		int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS))
+				& (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * The middle of a bucket, in microseconds.
+	 */
+	private static double middle(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lower + (1L << shift) / 2.0;
+	}
+}
@@ -0,0 +1,76 @@
+package com.techstorm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline stand-in for the online providers. A text is "translated" by
+ * prefixing it with the target language, so runs are repeatable and a
+ * translated cell is easy to recognize. Every request takes a simulated
+ * latency on the executor, like a blocking HTTP call would.
+ */
+public class LocalTranslationProvider implements TranslationProvider {
+
+	private static final int MAX_TEXTS_PER_REQUEST = 128;
+
+	private final long latencyMillis;
+	private final long jitterMillis;
+	private final Executor executor;
+
+	/**
+	 * @param latencyMillis time every request takes
+	 * @param jitterMillis at most this much is added, derived from the texts
+	 *        so the same request always takes the same time
+	 */
+	public LocalTranslationProvider(long latencyMillis, long jitterMillis,
+			Executor executor) {
+		this.latencyMillis = latencyMillis;
+		this.jitterMillis = jitterMillis;
+		this.executor = executor;
+	}
+
+	public String getName() {
+		return "local";
+	}
+
+	public int getMaxTextsPerRequest() {
+		return MAX_TEXTS_PER_REQUEST;
+	}
+
+	public CompletableFuture<List<String>> translateAsync(List<String> texts,
+			String fromLanguage, String toLanguage) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				TimeUnit.MILLISECONDS.sleep(getLatencyMillis(texts));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CompletionException(e);
+			}
+			return translateNow(texts, toLanguage);
+		}, executor);
+	}
+
+	/**
+	 * The translations, without the simulated latency.
+	 */
+	public static List<String> translateNow(List<String> texts,
+			String toLanguage) {
+		List<String> result = new ArrayList<String>(texts.size());
+		for (String text : texts) {
+			result.add("[" + toLanguage + "] " + text);
+		}
+		return result;
+	}
+
+	long getLatencyMillis(List<String> texts) {
+		if (jitterMillis <= 0) {
+			return latencyMillis;
+		}
+		return latencyMillis + (texts.hashCode() & Integer.MAX_VALUE)
+				% (jitterMillis + 1);
+	}
+}
@@ -0,0 +1,109 @@
+package com.techstorm;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.StreamHandler;
+
+import com.translator.google.translator.OnlineGoogleTranslator;
+
+/**
+ * Sets up java.util.logging for a run: one line per record, written by an
+ * {@link AsyncHandler} to the console or to {@link Config#logFile}. Request
+ * payloads are logged at FINEST by {@link OnlineGoogleTranslator#PAYLOAD_LOGGER}
+ * only when {@link Config#logPayloads} is set, whatever the log level.
+ */
+public class Logging {
+
+	private static final int QUEUE_CAPACITY = 8192;
+
+	/** packages {@link Config#logLevel} applies to, libraries stay at INFO */
+	private static final String[] PACKAGES = { "com.techstorm",
+			"com.translator" };
+
+	/** loggers only keep their level while they are referenced */
+	private static final List<Logger> configured = new ArrayList<Logger>();
+
+	public static void configure(Config config) throws IOException {
+		LogManager.getLogManager().reset();
+		Handler output;
+		if (config.logFile != null) {
+			output = new FileHandler(config.logFile, true);
+		} else {
+			output = new StreamHandler(System.out, new LineFormatter());
+		}
+		output.setFormatter(new LineFormatter());
+		output.setLevel(Level.ALL);
+		output.setEncoding("UTF-8");
+
+		Logger root = Logger.getLogger("");
+		root.setLevel(Level.INFO);
+		root.addHandler(new AsyncHandler(output, QUEUE_CAPACITY));
+		configured.clear();
+		configured.add(root);
+		for (String name : PACKAGES) {
+			Logger logger = Logger.getLogger(name);
+			logger.setLevel(config.logLevel);
+			configured.add(logger);
+		}
+
+		Logger payloads = Logger
+				.getLogger(OnlineGoogleTranslator.PAYLOAD_LOGGER);
+		payloads.setLevel(config.logPayloads ? Level.FINEST : Level.OFF);
+		configured.add(payloads);
+	}
+
+	/**
+	 * time level [thread] logger: message, then the stack trace if any.
+	 */
+	static class LineFormatter extends Formatter {
+		private final SimpleDateFormat time = new SimpleDateFormat(
+				"yyyy-MM-dd HH:mm:ss.SSS");
+
+		@Override
+		public synchronized String format(LogRecord record) {
+			StringBuilder line = new StringBuilder();
+			line.append(time.format(new Date(record.getMillis()))).append(' ')
+					.append(record.getLevel().getName()).append(" [")
+					.append(threadId(record)).append("] ")
+					.append(shortName(record.getLoggerName())).append(": ")
+					.append(formatMessage(record))
+					.append(System.lineSeparator());
+			if (record.getThrown() != null) {
+				StringWriter trace = new StringWriter();
+				record.getThrown().printStackTrace(new PrintWriter(trace));
+				line.append(trace);
+			}
+			return line.toString();
+		}
+
+		/**
+		 * The id of the thread that logged the record, which is not the one
+		 * formatting it. getThreadID is deprecated on newer JDKs, but its
+		 * replacement getLongThreadID does not exist on 8.
+		 */
+		@SuppressWarnings("deprecation")
+		private static int threadId(LogRecord record) {
+			return record.getThreadID();
+		}
+
+		private static String shortName(String loggerName) {
+			if (loggerName == null) {
+				return "";
+			}
+			return loggerName.substring(loggerName.lastIndexOf('.', Math.max(
+					0, loggerName.length() - 2)) + 1);
+		}
+	}
+}
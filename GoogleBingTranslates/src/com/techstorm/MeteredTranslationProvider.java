@@ -0,0 +1,45 @@
+package com.techstorm;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Records the characters, latency and in-flight count of the requests of
+ * another provider. The latency includes waiting for rate limits and
+ * retries, it is the time the caller waits.
+ */
+public class MeteredTranslationProvider implements TranslationProvider {
+
+	private final TranslationProvider provider;
+	private final Metrics metrics;
+
+	public MeteredTranslationProvider(TranslationProvider provider,
+			Metrics metrics) {
+		this.provider = provider;
+		this.metrics = metrics;
+	}
+
+	public String getName() {
+		return provider.getName();
+	}
+
+	public int getMaxTextsPerRequest() {
+		return provider.getMaxTextsPerRequest();
+	}
+
+	public CompletableFuture<List<String>> translateAsync(List<String> texts,
+			String fromLanguage, String toLanguage) {
+		long start = System.nanoTime();
+		metrics.requestStarted(TranslationProvider.countCharacters(texts));
+		CompletableFuture<List<String>> translated;
+		try {
+			translated = provider.translateAsync(texts, fromLanguage,
+					toLanguage);
+		} catch (RuntimeException e) {
+			metrics.requestFinished(getName(), System.nanoTime() - start);
+			throw e;
+		}
+		return translated.whenComplete((translations, failure) -> metrics
+				.requestFinished(getName(), System.nanoTime() - start));
+	}
+}
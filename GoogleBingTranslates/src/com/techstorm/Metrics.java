@@ -0,0 +1,291 @@
+package com.techstorm;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Throughput, request latency, cache and account statistics of a run. They
+ * are exported over JMX and, every {@link Config#metricsInterval} seconds,
+ * printed as a summary line and appended to {@link Config#metricsCsv} as
+ * time,metric,value rows.
+ */
+public class Metrics implements TranslationMetricsMXBean {
+
+	private static final Logger LOG = Logger.getLogger(Metrics.class
+			.getName());
+
+	private static final String OBJECT_NAME = "com.techstorm:type=TranslationMetrics";
+
+	private final TranslationMemory memory;
+	private final long startedAt = System.nanoTime();
+	private final LongAdder rows = new LongAdder();
+	private final LongAdder characters = new LongAdder();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final Map<String, LongAdder> errors = new ConcurrentHashMap<String, LongAdder>();
+	private final Map<String, LongAdder> retries = new ConcurrentHashMap<String, LongAdder>();
+	private ScheduledExecutorService reporter;
+	private PrintWriter csv;
+	private long reportedRows;
+	private long reportedCharacters;
+	private long reportedAt = startedAt;
+
+	/**
+	 * @param memory the translation memory, or null
+	 */
+	public Metrics(TranslationMemory memory) {
+		this.memory = memory;
+	}
+
+	public void rowsWritten(long count) {
+		rows.add(count);
+	}
+
+	public void requestStarted(long characterCount) {
+		characters.add(characterCount);
+		inFlight.incrementAndGet();
+	}
+
+	public void requestFinished(String provider, long nanos) {
+		inFlight.decrementAndGet();
+		latencies.computeIfAbsent(provider, p -> new LatencyHistogram())
+				.record(nanos);
+	}
+
+	/**
+	 * Counts a failed request of an account.
+	 */
+	public void requestFailed(String key, Throwable failure) {
+		errors.computeIfAbsent(key, k -> new LongAdder()).increment();
+		if (RetryPolicy.isRetryable(failure)) {
+			retries.computeIfAbsent(key, k -> new LongAdder()).increment();
+		}
+	}
+
+	public long getRows() {
+		return rows.sum();
+	}
+
+	public double getRowsPerSecond() {
+		return perSecond(getRows(), System.nanoTime() - startedAt);
+	}
+
+	public long getCharacters() {
+		return characters.sum();
+	}
+
+	public double getCharactersPerSecond() {
+		return perSecond(getCharacters(), System.nanoTime() - startedAt);
+	}
+
+	public int getInFlightRequests() {
+		return inFlight.get();
+	}
+
+	public double getCacheHitRatio() {
+		if (memory == null) {
+			return 0;
+		}
+		TranslationCache cache = memory.getCache();
+		long hits = cache.getHits();
+		long lookups = hits + cache.getMisses();
+		return lookups > 0 ? (double) hits / lookups : 0;
+	}
+
+	public double getMemoryHitRatio() {
+		if (memory == null) {
+			return 0;
+		}
+		// every lookup asks the cache first, a cache miss may still be in
+		// the log
+		TranslationCache cache = memory.getCache();
+		long hits = cache.getHits() + memory.getLogHits();
+		long lookups = cache.getHits() + cache.getMisses();
+		return lookups > 0 ? (double) hits / lookups : 0;
+	}
+
+	public Map<String, Long> getRequests() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<String, LatencyHistogram> latency : latencies
+				.entrySet()) {
+			result.put(latency.getKey(), latency.getValue().getCount());
+		}
+		return result;
+	}
+
+	public Map<String, Double> getLatencyP50Millis() {
+		return getPercentiles(50);
+	}
+
+	public Map<String, Double> getLatencyP99Millis() {
+		return getPercentiles(99);
+	}
+
+	private Map<String, Double> getPercentiles(double percentile) {
+		Map<String, Double> result = new TreeMap<String, Double>();
+		for (Map.Entry<String, LatencyHistogram> latency : latencies
+				.entrySet()) {
+			result.put(latency.getKey(),
+					latency.getValue().getPercentileMillis(percentile));
+		}
+		return result;
+	}
+
+	public Map<String, Long> getErrorsByKey() {
+		return sums(errors);
+	}
+
+	public Map<String, Long> getRetriesByKey() {
+		return sums(retries);
+	}
+
+	private static Map<String, Long> sums(Map<String, LongAdder> counters) {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+			result.put(counter.getKey(), counter.getValue().sum());
+		}
+		return result;
+	}
+
+	private static double perSecond(long count, long nanos) {
+		return nanos > 0 ? count * 1e9 / nanos : 0;
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server.
+	 */
+	public void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+		} catch (JMException e) {
+			LOG.log(Level.WARNING, "Cannot register the metrics MBean", e);
+		}
+	}
+
+	/**
+	 * Reports the metrics every interval until {@link #stop()}.
+	 *
+	 * @param csvFile file the metrics are appended to, or null
+	 */
+	public void start(long intervalSeconds, File csvFile) throws IOException {
+		if (csvFile != null) {
+			boolean header = !csvFile.exists() || csvFile.length() == 0;
+			csv = new PrintWriter(new OutputStreamWriter(new FileOutputStream(
+					csvFile, true), StandardCharsets.UTF_8));
+			if (header) {
+				csv.println("time,metric,value");
+			}
+		}
+		reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "metrics-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reporter.scheduleAtFixedRate(this::report, intervalSeconds,
+				intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops reporting, after a last report.
+	 */
+	public void stop() {
+		if (reporter != null) {
+			reporter.shutdown();
+			try {
+				reporter.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		report();
+		if (csv != null) {
+			csv.close();
+		}
+	}
+
+	/**
+	 * Prints a summary with the rates since the last report and appends all
+	 * metrics to the CSV file.
+	 */
+	synchronized void report() {
+		long now = System.nanoTime();
+		long rowCount = getRows();
+		long characterCount = getCharacters();
+		double rowRate = perSecond(rowCount - reportedRows, now - reportedAt);
+		double characterRate = perSecond(characterCount - reportedCharacters,
+				now - reportedAt);
+		reportedRows = rowCount;
+		reportedCharacters = characterCount;
+		reportedAt = now;
+
+		Map<String, Double> p50 = getLatencyP50Millis();
+		Map<String, Double> p99 = getLatencyP99Millis();
+		StringBuilder line = new StringBuilder();
+		line.append(String.format("%d rows (%.1f/s), %d chars (%.0f/s), %d in flight, memory hits %.1f%% (cache %.1f%%)",
+				rowCount, rowRate, characterCount, characterRate,
+				getInFlightRequests(), getMemoryHitRatio() * 100,
+				getCacheHitRatio() * 100));
+		for (String provider : p50.keySet()) {
+			line.append(String.format(", %s p50 %.0fms p99 %.0fms",
+					provider, p50.get(provider), p99.get(provider)));
+		}
+		Map<String, Long> errorsByKey = getErrorsByKey();
+		if (!errorsByKey.isEmpty()) {
+			line.append(", errors ").append(errorsByKey);
+		}
+		LOG.info(line.toString());
+
+		if (csv == null) {
+			return;
+		}
+		long time = System.currentTimeMillis();
+		writeMetric(time, "rows", rowCount);
+		writeMetric(time, "rowsPerSecond", rowRate);
+		writeMetric(time, "characters", characterCount);
+		writeMetric(time, "charactersPerSecond", characterRate);
+		writeMetric(time, "inFlightRequests", getInFlightRequests());
+		writeMetric(time, "memoryHitRatio", getMemoryHitRatio());
+		writeMetric(time, "cacheHitRatio", getCacheHitRatio());
+		writeMetrics(time, "requests.", getRequests());
+		writeMetrics(time, "latencyP50Millis.", p50);
+		writeMetrics(time, "latencyP99Millis.", p99);
+		writeMetrics(time, "errors.", errorsByKey);
+		writeMetrics(time, "retries.", getRetriesByKey());
+		csv.flush();
+	}
+
+	private void writeMetrics(long time, String prefix,
+			Map<String, ? extends Number> values) {
+		for (Map.Entry<String, ? extends Number> value : values.entrySet()) {
+			writeMetric(time, prefix + value.getKey(), value.getValue());
+		}
+	}
+
+	private void writeMetric(long time, String metric, Number value) {
+		csv.println(time + "," + metric + "," + value);
+	}
+}
@@ -0,0 +1,73 @@
+package com.techstorm;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side token bucket limiting requests per second and characters per
+ * second. Callers wait for their tokens instead of being refused, a request
+ * larger than the bucket goes through and makes the following callers wait
+ * for the tokens it borrowed. A rate of zero or less is unlimited.
+ */
+public class RateLimiter {
+
+	private final Bucket requests;
+	private final Bucket characters;
+
+	public RateLimiter(double requestsPerSecond, double charactersPerSecond) {
+		requests = requestsPerSecond > 0 ? new Bucket(requestsPerSecond) : null;
+		characters = charactersPerSecond > 0 ? new Bucket(charactersPerSecond)
+				: null;
+	}
+
+	public boolean isUnlimited() {
+		return requests == null && characters == null;
+	}
+
+	/**
+	 * Waits until one request with the given number of characters may be
+	 * sent.
+	 */
+	public void acquire(long characterCount) throws InterruptedException {
+		long waitNanos = 0;
+		if (requests != null) {
+			waitNanos = requests.reserve(1);
+		}
+		if (characters != null) {
+			waitNanos = Math.max(waitNanos, characters.reserve(characterCount));
+		}
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	/**
+	 * Holds up to one second worth of tokens.
+	 */
+	private static class Bucket {
+		private final double tokensPerNano;
+		private final double capacity;
+		private double tokens;
+		private long refilledAt;
+
+		Bucket(double tokensPerSecond) {
+			this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+			this.capacity = tokensPerSecond;
+			this.tokens = capacity;
+			this.refilledAt = System.nanoTime();
+		}
+
+		/**
+		 * Takes the tokens, going into debt when there are not enough.
+		 *
+		 * @return nanoseconds to wait until the debt is paid off
+		 */
+		synchronized long reserve(long count) {
+			long now = System.nanoTime();
+			tokens = Math.min(capacity, tokens + (now - refilledAt)
+					* tokensPerNano);
+			refilledAt = now;
+			tokens -= count;
+			return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.techstorm;
+
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.translator.google.core.TranslationException;
+
+/**
+ * Retries calls that failed for a transient reason (HTTP 429, 5xx, timeouts
+ * and dropped connections) with exponential backoff and jitter. A Retry-After
+ * sent by the service takes precedence over the backoff. Any other failure is
+ * final.
+ */
+public class RetryPolicy {
+
+	private static final Logger LOG = Logger.getLogger(RetryPolicy.class
+			.getName());
+
+	/** status code in the message of clients that only throw Exception */
+	private static final Pattern RESPONSE_CODE = Pattern
+			.compile("response code: (\\d{3})");
+
+	private static final ScheduledExecutorService SCHEDULER = Executors
+			.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "retry-scheduler");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	private final int maxAttempts;
+	private final long baseDelayMillis;
+	private final long maxDelayMillis;
+
+	public RetryPolicy(int maxAttempts, long baseDelayMillis,
+			long maxDelayMillis) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelayMillis = baseDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	/**
+	 * Runs the call and runs it again, after a delay, for as long as it fails
+	 * with a retryable error and attempts are left. Waiting does not hold a
+	 * thread.
+	 */
+	public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> call) {
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		attempt(call, 1, result);
+		return result;
+	}
+
+	private <T> void attempt(Supplier<CompletableFuture<T>> call, int attempt,
+			CompletableFuture<T> result) {
+		CompletableFuture<T> future;
+		try {
+			future = call.get();
+		} catch (Throwable e) {
+			result.completeExceptionally(e);
+			return;
+		}
+		future.whenComplete((value, failure) -> {
+			if (failure == null) {
+				result.complete(value);
+				return;
+			}
+			Throwable cause = unwrap(failure);
+			if (attempt >= maxAttempts || !isRetryable(cause)) {
+				result.completeExceptionally(cause);
+				return;
+			}
+			long delay = delayMillis(attempt, cause);
+			LOG.info("Retrying in " + delay + "ms (attempt " + (attempt + 1)
+					+ "/" + maxAttempts + "): " + cause.getMessage());
+			SCHEDULER.schedule(() -> attempt(call, attempt + 1, result),
+					delay, TimeUnit.MILLISECONDS);
+		});
+	}
+
+	/**
+	 * Backoff before the given retry: the Retry-After of the failure, or
+	 * twice the previous delay with up to half of it taken off at random.
+	 * Either is capped at the maximum delay, so a server asking for an hour
+	 * does not park the batch for an hour.
+	 */
+	long delayMillis(int attempt, Throwable failure) {
+		if (failure instanceof TranslationException) {
+			long retryAfter = ((TranslationException) failure)
+					.getRetryAfterMillis();
+			if (retryAfter > maxDelayMillis) {
+				LOG.warning("Retry-After of " + retryAfter
+						+ "ms capped at the maximum delay of " + maxDelayMillis
+						+ "ms");
+				return maxDelayMillis;
+			}
+			if (retryAfter >= 0) {
+				return retryAfter;
+			}
+		}
+		long delay = Math.min(maxDelayMillis,
+				baseDelayMillis << Math.min(attempt - 1, 30));
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+	public static boolean isRetryable(Throwable failure) {
+		failure = unwrap(failure);
+		if (failure instanceof SocketTimeoutException
+				|| failure instanceof ConnectException
+				|| failure instanceof SocketException) {
+			return true;
+		}
+		int statusCode = getStatusCode(failure);
+		return statusCode == 429 || statusCode >= 500;
+	}
+
+	/**
+	 * The HTTP status a failed request was answered with, -1 when it got
+	 * none.
+	 */
+	static int getStatusCode(Throwable failure) {
+		failure = unwrap(failure);
+		if (failure instanceof TranslationException) {
+			return ((TranslationException) failure).getStatusCode();
+		}
+		if (failure.getMessage() != null) {
+			Matcher matcher = RESPONSE_CODE.matcher(failure.getMessage());
+			if (matcher.find()) {
+				return Integer.parseInt(matcher.group(1));
+			}
+		}
+		return -1;
+	}
+
+	static Throwable unwrap(Throwable failure) {
+		// the Bing client wraps its I/O errors in plain exceptions
+		while ((failure instanceof CompletionException
+				|| failure.getClass() == Exception.class)
+				&& failure.getCause() != null) {
+			failure = failure.getCause();
+		}
+		return failure;
+	}
+}
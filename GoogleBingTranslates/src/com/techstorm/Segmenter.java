@@ -0,0 +1,70 @@
+package com.techstorm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a cell into the segments worth translating on their own. Markup
+ * (HTML tags, also HTML-escaped ones like {@code &lt;br /&gt;}), line breaks
+ * and the whitespace between sentences separate the segments and are kept as
+ * they are.
+ * <p>
+ * A split cell is a list that alternates between markup and text and starts
+ * and ends with markup, which may be empty: markup, text, markup, ...,
+ * markup. The text parts sit at the odd indexes.
+ */
+public class Segmenter {
+
+	private static final Pattern BOUNDARY = Pattern
+			.compile("&lt;.*?&gt;|<[^<>]*>|\\s*[\\r\\n]+\\s*|(?<=[.!?])\\s+(?=\\p{Lu})");
+
+	public static List<String> split(String text) {
+		List<String> parts = new ArrayList<String>();
+		StringBuilder markup = new StringBuilder();
+		Matcher boundary = BOUNDARY.matcher(text);
+		int start = 0;
+		while (boundary.find()) {
+			addText(parts, markup, text.substring(start, boundary.start()));
+			markup.append(boundary.group());
+			start = boundary.end();
+		}
+		addText(parts, markup, text.substring(start));
+		parts.add(markup.toString());
+		return parts;
+	}
+
+	/**
+	 * Adds a text segment, moving its surrounding whitespace to the markup.
+	 */
+	private static void addText(List<String> parts, StringBuilder markup,
+			String text) {
+		int begin = 0;
+		int end = text.length();
+		while (begin < end && Character.isWhitespace(text.charAt(begin))) {
+			begin++;
+		}
+		while (end > begin && Character.isWhitespace(text.charAt(end - 1))) {
+			end--;
+		}
+		markup.append(text, 0, begin);
+		if (begin < end) {
+			parts.add(markup.toString());
+			markup.setLength(0);
+			parts.add(text.substring(begin, end));
+		}
+		markup.append(text, end, text.length());
+	}
+
+	/**
+	 * Puts a split cell back together.
+	 */
+	public static String join(List<String> parts) {
+		StringBuilder result = new StringBuilder();
+		for (String part : parts) {
+			result.append(part);
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,210 @@
+package com.techstorm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * One of the parts a run is split into with --shard i/N, so that N workers
+ * on as many cores or hosts translate the input side by side. A shard takes
+ * either the records that start in its N-th of the input bytes, or, with
+ * {@link Config#shardByHash}, the records whose row number hashes to it,
+ * which evens out runs of long rows. Every worker writes its own part files,
+ * {@link #merge} puts them back together in input order.
+ */
+public class Shard {
+
+	/** the whole input, for runs that are not split */
+	public static final Shard WHOLE = new Shard(1, 1, false);
+
+	/** one based */
+	private final int index;
+	private final int count;
+	private final boolean byHash;
+
+	public Shard(int index, int count, boolean byHash) {
+		if (count < 1 || index < 1 || index > count) {
+			throw new IllegalArgumentException("Shard " + index + "/" + count
+					+ " does not exist, shards are numbered 1 to N");
+		}
+		this.index = index;
+		this.count = count;
+		this.byHash = byHash;
+	}
+
+	/**
+	 * @param spec i/N, like 2/4 for the second of four shards
+	 */
+	public static Shard parse(String spec, boolean byHash) {
+		String[] parts = spec.split("/");
+		if (parts.length != 2) {
+			throw new IllegalArgumentException("Shard " + spec
+					+ " is not i/N, like 2/4");
+		}
+		return new Shard(Integer.parseInt(parts[0].trim()),
+				Integer.parseInt(parts[1].trim()), byHash);
+	}
+
+	public boolean isWhole() {
+		return count == 1;
+	}
+
+	/**
+	 * Added to the names of the files the shard writes: its outputs, progress
+	 * file and translation memory.
+	 */
+	public String getSuffix() {
+		return isWhole() ? "" : ".part" + index + "of" + count;
+	}
+
+	/**
+	 * Opens the input, positioned at the first record of the shard when it
+	 * is split by bytes.
+	 */
+	public CsvReader open(File input) throws IOException {
+		CsvReader reader = new CsvReader(input);
+		if (!byHash && !isWhole()) {
+			long size = input.length();
+			// the header goes to the first shard with the rows after it
+			reader.range(size / count * (index - 1), index == count ? size
+					: size / count * index);
+		}
+		return reader;
+	}
+
+	/**
+	 * Whether the record with the given zero based number in the input is in
+	 * this shard. Split by bytes every record the reader returns is.
+	 */
+	public boolean contains(long rowIndex) {
+		return !byHash || shardOf(rowIndex, count) == index;
+	}
+
+	/**
+	 * The one based shard a row number hashes to.
+	 */
+	static int shardOf(long rowIndex, int count) {
+		long hash = rowIndex * 0x9E3779B97F4A7C15L;
+		hash ^= hash >>> 32;
+		return (int) ((hash & Long.MAX_VALUE) % count) + 1;
+	}
+
+	/**
+	 * Puts the part files of one output back together in input order.
+	 * Parts split by bytes are appended one after the other, gzip parts
+	 * included as a gzip file may hold several members. Parts split by hash
+	 * are read record by record and interleaved by the row numbers.
+	 *
+	 * @param parts the output of every shard, the first shard first
+	 */
+	public static void merge(List<File> parts, File output, boolean byHash,
+			boolean gzip) throws IOException {
+		for (File part : parts) {
+			if (!part.exists()) {
+				throw new IOException("Part " + part + " is missing");
+			}
+		}
+		File merged = new File(output.getPath() + ".tmp");
+		if (byHash) {
+			interleave(parts, merged, gzip);
+		} else {
+			concatenate(parts, merged);
+		}
+		Files.move(merged.toPath(), output.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static void concatenate(List<File> parts, File merged)
+			throws IOException {
+		FileChannel out = FileChannel.open(merged.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			for (File part : parts) {
+				FileChannel in = FileChannel.open(part.toPath(),
+						StandardOpenOption.READ);
+				try {
+					long size = in.size();
+					for (long copied = 0; copied < size;) {
+						copied += in.transferTo(copied, size - copied, out);
+					}
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void interleave(List<File> parts, File merged,
+			boolean gzip) throws IOException {
+		int count = parts.size();
+		CsvReader[] readers = new CsvReader[count];
+		File[] unpacked = new File[count];
+		CsvWriter out = CsvWriter.open(merged, false, gzip);
+		try {
+			for (int part = 0; part < count; part++) {
+				File file = parts.get(part);
+				if (gzip) {
+					unpacked[part] = gunzip(file);
+					file = unpacked[part];
+				}
+				readers[part] = new CsvReader(file);
+			}
+			for (long rowIndex = 0;; rowIndex++) {
+				int shard = shardOf(rowIndex, count);
+				CsvRecord record = readers[shard - 1].next();
+				if (record == null) {
+					break;
+				}
+				out.writeRaw(record.getBytes());
+				out.endRow();
+			}
+			for (int part = 0; part < count; part++) {
+				if (readers[part].next() != null) {
+					throw new IOException("Part " + parts.get(part)
+							+ " has more rows than its share of the input,"
+							+ " was it written with another shard count?");
+				}
+			}
+		} finally {
+			out.close();
+			for (int part = 0; part < count; part++) {
+				if (readers[part] != null) {
+					readers[part].close();
+				}
+				if (unpacked[part] != null) {
+					unpacked[part].delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Unpacks a gzip file next to it, as the reader maps plain files only.
+	 */
+	static File gunzip(File file) throws IOException {
+		File unpacked = new File(file.getPath() + ".unpacked");
+		InputStream in = new GZIPInputStream(new FileInputStream(file));
+		try {
+			Files.copy(in, unpacked.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			in.close();
+		}
+		return unpacked;
+	}
+
+	@Override
+	public String toString() {
+		return "shard " + index + "/" + count + (byHash ? " by hash" : "");
+	}
+}
@@ -0,0 +1,98 @@
+package com.techstorm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replaces the parts of a text that must not be translated with numbered
+ * placeholders before it is sent, and puts them back into the translation.
+ * Masked are HTML tags (also HTML-escaped ones), HTML entities, URLs, model
+ * numbers like TQ-142-1EF and numbers with their unit.
+ */
+public class TokenMasker {
+
+	private static final String TAG = "&lt;.*?&gt;|<[^<>]*>";
+	private static final String ENTITY = "&(?:[a-zA-Z]+|#\\d+|#x[0-9a-fA-F]+);";
+	private static final String URL = "(?:https?|ftp)://\\S+|www\\.\\S+";
+	/** upper case letters and digits with at least one digit: TQ-142-1EF, LR6 */
+	private static final String MODEL = "\\b(?=[A-Z0-9-]*\\d)[A-Z0-9]+(?:-[A-Z0-9]+)+\\b|\\b[A-Z]+\\d[A-Z0-9]*\\b";
+	private static final String NUMBER = "\\b\\d+(?:[.,]\\d+)*(?:\\s?(?:mm|cm|km|mg|kg|ml|mAh|Hz|GB|MB|TB|ATM|atm|m|g|l|V|W)\\b|%)?";
+	/** literal placeholders in the text are masked too, so they survive */
+	private static final String LITERAL_PLACEHOLDER = "\\{\\d+\\}";
+
+	private static final Pattern UNTRANSLATABLE = Pattern.compile(TAG + "|"
+			+ ENTITY + "|" + URL + "|" + MODEL + "|" + NUMBER + "|"
+			+ LITERAL_PLACEHOLDER);
+
+	/** translators sometimes add spaces inside the braces */
+	private static final Pattern PLACEHOLDER = Pattern
+			.compile("\\{\\s*(\\d+)\\s*\\}");
+
+	private static final Pattern LETTER = Pattern.compile("\\p{L}");
+
+	public static Masked mask(String text) {
+		List<String> tokens = new ArrayList<String>();
+		StringBuffer masked = new StringBuffer();
+		Matcher token = UNTRANSLATABLE.matcher(text);
+		while (token.find()) {
+			token.appendReplacement(masked, "{" + tokens.size() + "}");
+			tokens.add(token.group());
+		}
+		token.appendTail(masked);
+		return new Masked(text, masked.toString(), tokens);
+	}
+
+	public static class Masked {
+		public final String original;
+		/** the text with every token replaced by its placeholder */
+		public final String text;
+		private final List<String> tokens;
+
+		Masked(String original, String text, List<String> tokens) {
+			this.original = original;
+			this.text = text;
+			this.tokens = tokens;
+		}
+
+		/**
+		 * Whether anything but tokens, punctuation and whitespace is left.
+		 */
+		public boolean isTranslatable() {
+			return LETTER.matcher(PLACEHOLDER.matcher(text).replaceAll(""))
+					.find();
+		}
+
+		/**
+		 * Puts the tokens back into the translation of {@link #text}.
+		 *
+		 * @return the translation, or null when the translator lost or
+		 *         invented placeholders
+		 */
+		public String unmask(String translation) {
+			if (tokens.isEmpty()) {
+				return translation;
+			}
+			boolean[] restored = new boolean[tokens.size()];
+			StringBuffer result = new StringBuffer();
+			Matcher placeholder = PLACEHOLDER.matcher(translation);
+			while (placeholder.find()) {
+				int index = Integer.parseInt(placeholder.group(1));
+				if (index >= tokens.size() || restored[index]) {
+					return null;
+				}
+				restored[index] = true;
+				placeholder.appendReplacement(result,
+						Matcher.quoteReplacement(tokens.get(index)));
+			}
+			placeholder.appendTail(result);
+			for (boolean done : restored) {
+				if (!done) {
+					return null;
+				}
+			}
+			return result.toString();
+		}
+	}
+}
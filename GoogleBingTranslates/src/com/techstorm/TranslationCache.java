@@ -0,0 +1,87 @@
+package com.techstorm;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory translation cache bounded by an estimate of the bytes it holds.
+ * The least recently used translations are evicted first.
+ */
+public class TranslationCache {
+
+	/** estimated bytes of a key, a map entry and a String besides its chars */
+	private static final int ENTRY_OVERHEAD = 136;
+
+	private final long maxBytes;
+	private final LinkedHashMap<TranslationKey, String> entries = new LinkedHashMap<TranslationKey, String>(
+			16, 0.75f, true);
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public TranslationCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	synchronized String get(TranslationKey key) {
+		String value = entries.get(key);
+		if (value != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return value;
+	}
+
+	synchronized void put(TranslationKey key, String value) {
+		String previous = entries.put(key, value);
+		if (previous != null) {
+			bytes -= sizeOf(previous);
+		}
+		bytes += sizeOf(value);
+		Iterator<Map.Entry<TranslationKey, String>> eldest = entries
+				.entrySet().iterator();
+		while (bytes > maxBytes && eldest.hasNext()) {
+			bytes -= sizeOf(eldest.next().getValue());
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	private static long sizeOf(String value) {
+		return ENTRY_OVERHEAD + 2L * value.length();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "TranslationCache{" + "entries=" + entries.size() + ", bytes="
+				+ bytes + ", hits=" + hits + ", misses=" + misses
+				+ ", evictions=" + evictions + '}';
+	}
+}
@@ -0,0 +1,324 @@
+package com.techstorm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Translates input rows without blocking on the translations. Rows are
+ * grouped into chunks of {@link Config#batchSize} and every configured column
+ * of a chunk is translated as one batch. Languages are either chained per
+ * column, each translated from the previous one, or fanned out from the
+ * original text in parallel (see {@link Config#chainLanguages}). The finished
+ * rows are handed to the per-language writers in input order. Only the
+ * translated columns are decoded, the others are copied to the outputs as
+ * the bytes they were read as. In delta mode the rows that are unchanged since
+ * the previous run are copied from its outputs instead, see {@link Delta}.
+ */
+public class TranslationEngine {
+
+	/**
+	 * Translates a batch of cell values. The future never completes
+	 * exceptionally and its list has one value per input value, in the same
+	 * order. The correlation id names the input rows of the batch in the log.
+	 */
+	public interface BatchTranslator {
+		CompletableFuture<List<String>> translate(List<String> values,
+				String fromLanguage, String toLanguage, String correlationId);
+	}
+
+	/** how many chunks may be in flight per worker before reading blocks */
+	private static final int PENDING_CHUNKS_PER_THREAD = 4;
+
+	private final Config config;
+	/** whether a column is translated, by zero based index */
+	private final boolean[] translatedColumns;
+	private final BatchTranslator translator;
+	private final Map<String, CsvWriter> writers;
+	private final Checkpoint checkpoint;
+	private final Metrics metrics;
+	/** null when every row is translated */
+	private final Delta delta;
+	private final int maxPendingChunks;
+	private final Deque<PendingChunk> pending = new ArrayDeque<PendingChunk>();
+	private List<CsvRecord> rows;
+	private List<Delta.Fingerprint> fingerprints;
+	/** input rows written so far, including those of a resumed run */
+	private long rowsWritten;
+	/** input rows scheduled so far, numbers the rows in correlation ids */
+	private long rowsScheduled;
+
+	public TranslationEngine(Config config, List<Integer> columnIndexes,
+			BatchTranslator translator, Map<String, CsvWriter> writers,
+			Checkpoint checkpoint, Metrics metrics) {
+		this(config, columnIndexes, translator, writers, checkpoint, metrics,
+				null);
+	}
+
+	/**
+	 * @param delta
+	 *            finds the rows to copy from the previous outputs, its
+	 *            manifest writer is among the writers
+	 */
+	public TranslationEngine(Config config, List<Integer> columnIndexes,
+			BatchTranslator translator, Map<String, CsvWriter> writers,
+			Checkpoint checkpoint, Metrics metrics, Delta delta) {
+		this.config = config;
+		this.translatedColumns = columnMask(columnIndexes);
+		this.translator = translator;
+		this.writers = writers;
+		this.checkpoint = checkpoint;
+		this.metrics = metrics;
+		this.delta = delta;
+		this.rowsWritten = checkpoint.getCommittedRows();
+		this.rowsScheduled = rowsWritten;
+		maxPendingChunks = Math.max(1, config.threads)
+				* PENDING_CHUNKS_PER_THREAD;
+		rows = new ArrayList<CsvRecord>(Math.max(1, config.batchSize));
+		fingerprints = delta != null ? new ArrayList<Delta.Fingerprint>(
+				Math.max(1, config.batchSize)) : null;
+	}
+
+	/**
+	 * Turns one based column numbers into a flag per zero based column index,
+	 * so the per row loops test a column without searching a list.
+	 */
+	public static boolean[] columnMask(List<Integer> columnIndexes) {
+		int width = 0;
+		for (int columnIndex : columnIndexes) {
+			width = Math.max(width, columnIndex);
+		}
+		boolean[] mask = new boolean[width];
+		for (int columnIndex : columnIndexes) {
+			if (columnIndex > 0) {
+				mask[columnIndex - 1] = true;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Adds a row to the current chunk and schedules the chunk once it is
+	 * full. Blocks while too many chunks are still in flight and writes every
+	 * chunk that has completed in order.
+	 */
+	public void submit(CsvRecord record) {
+		rows.add(record);
+		if (delta != null) {
+			fingerprints.add(delta.fingerprint(record));
+		}
+		if (rows.size() < config.batchSize) {
+			return;
+		}
+		pending.add(schedule(rows, fingerprints));
+		rows = new ArrayList<CsvRecord>(config.batchSize);
+		if (delta != null) {
+			fingerprints = new ArrayList<Delta.Fingerprint>(config.batchSize);
+		}
+		while (pending.size() > maxPendingChunks
+				|| (!pending.isEmpty() && pending.peek().isDone())) {
+			writeChunk(pending.poll());
+		}
+	}
+
+	/**
+	 * Schedules the last partial chunk, waits for all chunks in flight, writes
+	 * them and saves a final checkpoint.
+	 */
+	public void finish() throws IOException {
+		if (!rows.isEmpty()) {
+			pending.add(schedule(rows, fingerprints));
+			rows = new ArrayList<CsvRecord>();
+		}
+		while (!pending.isEmpty()) {
+			writeChunk(pending.poll());
+		}
+		checkpoint.save(writers);
+	}
+
+	/**
+	 * @param fingerprints
+	 *            one per row in delta mode, null otherwise
+	 */
+	private PendingChunk schedule(List<CsvRecord> rows,
+			List<Delta.Fingerprint> fingerprints) {
+		List<String> languages = config.toLanguages;
+		int width = 0;
+		for (CsvRecord record : rows) {
+			width = Math.max(width, record.size());
+		}
+		PendingChunk chunk = new PendingChunk(rows, fingerprints, width);
+		String rowRange = "rows " + (rowsScheduled + 1) + "-"
+				+ (rowsScheduled + rows.size());
+		rowsScheduled += rows.size();
+		if (languages.isEmpty()) {
+			return chunk;
+		}
+		int translatedWidth = Math.min(width, translatedColumns.length);
+		for (int index = 0; index < translatedWidth; index++) {
+			if (!translatedColumns[index]) {
+				continue;
+			}
+			List<String> column = new ArrayList<String>(rows.size());
+			for (int rowIndex = 0; rowIndex < rows.size(); rowIndex++) {
+				CsvRecord record = rows.get(rowIndex);
+				// unchanged rows are copied, not translated
+				column.add(index < record.size()
+						&& !isUnchanged(fingerprints, rowIndex) ? record
+						.get(index) : null);
+			}
+			chunk.stages[index] = translateAll(config, translator, column,
+					rowRange + " column " + (index + 1));
+		}
+		return chunk;
+	}
+
+	private static boolean isUnchanged(List<Delta.Fingerprint> fingerprints,
+			int rowIndex) {
+		return fingerprints != null && fingerprints.get(rowIndex).isUnchanged();
+	}
+
+	/**
+	 * Schedules the translation of values into every language, each chained
+	 * from the previous language or fanned out from the original values as
+	 * {@link Config#chainLanguages} says.
+	 *
+	 * @return the translation into every language, in the order of
+	 *         {@link Config#toLanguages}
+	 */
+	static CompletableFuture<List<String>>[] translateAll(Config config,
+			BatchTranslator translator, List<String> values,
+			String correlationId) {
+		List<String> languages = config.toLanguages;
+		CompletableFuture<List<String>> original = CompletableFuture
+				.completedFuture(values);
+		@SuppressWarnings("unchecked")
+		CompletableFuture<List<String>>[] stages = (CompletableFuture<List<String>>[]) new CompletableFuture<?>[languages.size()];
+		for (int languageIndex = 0; languageIndex < languages.size(); languageIndex++) {
+			boolean chained = config.chainLanguages && languageIndex > 0;
+			String fromLanguage = chained ? languages.get(languageIndex - 1)
+					: config.fromLanguage;
+			String toLanguage = languages.get(languageIndex);
+			// fanned out, every language starts from the original
+			CompletableFuture<List<String>> source = chained ? stages[languageIndex - 1]
+					: original;
+			stages[languageIndex] = source.thenCompose(batch -> translator
+					.translate(batch, fromLanguage, toLanguage, correlationId));
+		}
+		return stages;
+	}
+
+	private void writeChunk(PendingChunk chunk) {
+		try {
+			writeOutputs(chunk);
+			rowsWritten += chunk.rows.size();
+			metrics.rowsWritten(chunk.rows.size());
+			checkpoint.rowsWritten(rowsWritten, writers);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeOutputs(PendingChunk chunk) throws IOException {
+		List<String> languages = config.toLanguages;
+		int width = chunk.stages.length;
+		@SuppressWarnings("unchecked")
+		List<String>[] columns = (List<String>[]) new List<?>[width];
+		for (int languageIndex = 0; languageIndex < languages.size(); languageIndex++) {
+			CsvWriter out = writers.get(languages.get(languageIndex));
+			if (out == null) {
+				continue;
+			}
+			// look up every translated column once instead of once per row
+			for (int index = 0; index < width; index++) {
+				CompletableFuture<List<String>>[] stages = chunk.stages[index];
+				columns[index] = stages != null ? stages[languageIndex].join()
+						: null;
+			}
+			for (int rowIndex = 0; rowIndex < chunk.rows.size(); rowIndex++) {
+				if (isUnchanged(chunk.fingerprints, rowIndex)) {
+					delta.copy(languages.get(languageIndex), chunk.fingerprints
+							.get(rowIndex).previousRow, out);
+				} else {
+					writeRow(out, chunk.rows.get(rowIndex), columns, rowIndex);
+				}
+			}
+		}
+		if (delta != null) {
+			CsvWriter manifest = writers.get(Delta.MANIFEST);
+			for (Delta.Fingerprint fingerprint : chunk.fingerprints) {
+				fingerprint.write(manifest);
+			}
+		}
+	}
+
+	/**
+	 * Writes a record as one line, the translated columns replaced by their
+	 * translation in the given row of the column lists.
+	 */
+	private static void writeRow(CsvWriter out, CsvRecord record,
+			List<String>[] columns, int rowIndex) throws IOException {
+		for (int index = 0; index < record.size(); index++) {
+			if (columns[index] != null) {
+				out.writeField(columns[index].get(rowIndex));
+			} else {
+				out.writeRaw(record.getRaw(index));
+			}
+		}
+		out.endRow();
+	}
+
+	/**
+	 * Closes every writer, reporting the first failure.
+	 */
+	public void close() throws IOException {
+		IOException failure = null;
+		for (CsvWriter out : writers.values()) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private static class PendingChunk {
+		final List<CsvRecord> rows;
+		/** null unless in delta mode */
+		final List<Delta.Fingerprint> fingerprints;
+		/** [column][language], null for columns that are not translated */
+		final CompletableFuture<List<String>>[][] stages;
+
+		@SuppressWarnings("unchecked")
+		PendingChunk(List<CsvRecord> rows,
+				List<Delta.Fingerprint> fingerprints, int width) {
+			this.rows = rows;
+			this.fingerprints = fingerprints;
+			this.stages = (CompletableFuture<List<String>>[][]) new CompletableFuture<?>[width][];
+		}
+
+		boolean isDone() {
+			for (CompletableFuture<List<String>>[] column : stages) {
+				if (column == null) {
+					continue;
+				}
+				for (CompletableFuture<List<String>> stage : column) {
+					if (!stage.isDone()) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+	}
+}
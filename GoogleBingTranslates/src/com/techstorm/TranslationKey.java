@@ -0,0 +1,72 @@
+package com.techstorm;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Fixed width key of a translation, the first 128 bits of the SHA-256 hash
+ * of (engine, from, to, text). The text itself is not kept, so a key costs
+ * the same for a word and for a long HTML description.
+ */
+final class TranslationKey {
+
+	private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+
+	/** bytes used by a key in the translation memory log */
+	static final int BYTES = 16;
+
+	final long high;
+	final long low;
+
+	TranslationKey(long high, long low) {
+		this.high = high;
+		this.low = low;
+	}
+
+	static TranslationKey of(String engine, String text, String fromLanguage,
+			String toLanguage) {
+		MessageDigest digest = DIGEST.get();
+		digest.reset();
+		update(digest, engine);
+		update(digest, fromLanguage);
+		update(digest, toLanguage);
+		update(digest, text);
+		byte[] hash = digest.digest();
+		long high = 0;
+		long low = 0;
+		for (int i = 0; i < 8; i++) {
+			high = (high << 8) | (hash[i] & 0xff);
+			low = (low << 8) | (hash[i + 8] & 0xff);
+		}
+		return new TranslationKey(high, low);
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof TranslationKey)) {
+			return false;
+		}
+		TranslationKey key = (TranslationKey) other;
+		return high == key.high && low == key.low;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (low ^ (low >>> 32));
+	}
+}
@@ -0,0 +1,250 @@
+package com.techstorm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Translation memory shared across runs. Translations are keyed by a
+ * {@link TranslationKey} and appended to a log file, which is indexed the
+ * first time the memory is used. Only the offsets of the records are kept in
+ * memory, recently used translations are held by a bounded
+ * {@link TranslationCache} and everything else is read back from the log on
+ * demand. Without a file the cache is all there is.
+ * <p>
+ * Each record of the log is the 16 byte key, the length of the translation
+ * and the UTF-8 bytes of the translation. A record cut short by a crash is
+ * dropped when the log is indexed.
+ */
+public class TranslationMemory {
+
+	/** key and length of a record */
+	private static final int HEADER_BYTES = TranslationKey.BYTES + 4;
+
+	private final File file;
+	private final TranslationCache cache;
+	/** offset of the length field of every record in the log */
+	private final Map<TranslationKey, Long> index = new ConcurrentHashMap<TranslationKey, Long>();
+	/** lookups the cache missed and the log answered */
+	private final LongAdder logHits = new LongAdder();
+	private volatile boolean loaded;
+	private FileChannel log;
+	private long end;
+
+	/**
+	 * @param file the log file, or null to keep translations in memory only
+	 */
+	public TranslationMemory(File file, TranslationCache cache) {
+		this.file = file;
+		this.cache = cache;
+	}
+
+	public String get(String engine, String text, String fromLanguage,
+			String toLanguage) throws IOException {
+		load();
+		TranslationKey key = TranslationKey.of(engine, text, fromLanguage,
+				toLanguage);
+		String translation = cache.get(key);
+		if (translation != null || log == null) {
+			return translation;
+		}
+		Long offset = index.get(key);
+		if (offset == null) {
+			return null;
+		}
+		translation = read(offset);
+		logHits.increment();
+		cache.put(key, translation);
+		return translation;
+	}
+
+	public void put(String engine, String text, String fromLanguage,
+			String toLanguage, String translation) throws IOException {
+		load();
+		TranslationKey key = TranslationKey.of(engine, text, fromLanguage,
+				toLanguage);
+		cache.put(key, translation);
+		if (log != null) {
+			append(key, translation.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Appends the records of another log that this one does not hold yet,
+	 * like the log a shard kept on its own. A record cut short ends the
+	 * other log, as it does when a log is indexed.
+	 *
+	 * @return the number of records appended
+	 */
+	public int merge(File other) throws IOException {
+		load();
+		if (log == null) {
+			throw new IllegalStateException(
+					"The memory has no log to merge into");
+		}
+		int merged = 0;
+		long size = other.length();
+		long read = 0;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(other)));
+		try {
+			while (read + HEADER_BYTES <= size) {
+				TranslationKey key = new TranslationKey(in.readLong(),
+						in.readLong());
+				int length = in.readInt();
+				if (length < 0 || read + HEADER_BYTES + length > size) {
+					break;
+				}
+				byte[] bytes = new byte[length];
+				in.readFully(bytes);
+				read += HEADER_BYTES + length;
+				if (!index.containsKey(key)) {
+					append(key, bytes);
+					merged++;
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return merged;
+	}
+
+	/**
+	 * Forces appended records to the disk. Every record is handed to the
+	 * operating system as it is put, so this is only needed where the
+	 * records must survive a crash of the machine: when a checkpoint is
+	 * saved and on close.
+	 */
+	public void force() throws IOException {
+		if (log != null) {
+			log.force(false);
+		}
+	}
+
+	public synchronized void close() throws IOException {
+		if (log != null) {
+			try {
+				log.force(false);
+			} finally {
+				log.close();
+			}
+		}
+	}
+
+	/**
+	 * Number of translations in the log, or in the cache without a log.
+	 */
+	public int size() throws IOException {
+		load();
+		return log != null ? index.size() : cache.getSize();
+	}
+
+	public TranslationCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Lookups that missed the cache and were read back from the log.
+	 */
+	public long getLogHits() {
+		return logHits.sum();
+	}
+
+	private synchronized void append(TranslationKey key, byte[] bytes)
+			throws IOException {
+		ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + bytes.length);
+		record.putLong(key.high).putLong(key.low).putInt(bytes.length)
+				.put(bytes);
+		record.flip();
+		long position = end;
+		while (record.hasRemaining()) {
+			position += log.write(record, position);
+		}
+		index.put(key, end + TranslationKey.BYTES);
+		end = position;
+	}
+
+	private String read(long offset) throws IOException {
+		ByteBuffer length = ByteBuffer.allocate(4);
+		readFully(length, offset);
+		ByteBuffer bytes = ByteBuffer.allocate(length.getInt(0));
+		readFully(bytes, offset + 4);
+		return new String(bytes.array(), StandardCharsets.UTF_8);
+	}
+
+	private void readFully(ByteBuffer buffer, long position)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = log.read(buffer, position);
+			if (read < 0) {
+				throw new EOFException("Translation memory record at "
+						+ position + " is cut short");
+			}
+			position += read;
+		}
+	}
+
+	private void load() throws IOException {
+		if (loaded) {
+			return;
+		}
+		synchronized (this) {
+			if (loaded) {
+				return;
+			}
+			if (file != null) {
+				log = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+						StandardOpenOption.READ, StandardOpenOption.WRITE);
+				end = scan();
+				if (end < log.size()) {
+					log.truncate(end);
+				}
+			}
+			loaded = true;
+		}
+	}
+
+	/**
+	 * Indexes every complete record of the log without decoding the
+	 * translations.
+	 *
+	 * @return the length of the log up to the last complete record
+	 */
+	private long scan() throws IOException {
+		long validLength = 0;
+		long size = log.size();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Channels.newInputStream(log.position(0))));
+		try {
+			while (validLength + HEADER_BYTES <= size) {
+				TranslationKey key = new TranslationKey(in.readLong(),
+						in.readLong());
+				int length = in.readInt();
+				if (length < 0
+						|| validLength + HEADER_BYTES + length > size) {
+					break;
+				}
+				for (int skipped = 0; skipped < length;) {
+					skipped += in.skipBytes(length - skipped);
+				}
+				index.put(key, validLength + TranslationKey.BYTES);
+				validLength += HEADER_BYTES + length;
+			}
+		} catch (EOFException e) {
+			// end of log
+		}
+		// the channel stays open, so the stream is not closed
+		return validLength;
+	}
+}
@@ -0,0 +1,43 @@
+package com.techstorm;
+
+import java.util.Map;
+
+/**
+ * Metrics of a running translation, as seen in JConsole or VisualVM under
+ * com.techstorm:type=TranslationMetrics. Rates are averages since the start.
+ */
+public interface TranslationMetricsMXBean {
+
+	long getRows();
+
+	double getRowsPerSecond();
+
+	/** characters sent to the providers */
+	long getCharacters();
+
+	double getCharactersPerSecond();
+
+	int getInFlightRequests();
+
+	/**
+	 * share of translation memory lookups answered, by the cache or by the
+	 * log
+	 */
+	double getMemoryHitRatio();
+
+	/** share of translation memory lookups answered by the cache */
+	double getCacheHitRatio();
+
+	/** requests by provider */
+	Map<String, Long> getRequests();
+
+	Map<String, Double> getLatencyP50Millis();
+
+	Map<String, Double> getLatencyP99Millis();
+
+	/** failed requests by account */
+	Map<String, Long> getErrorsByKey();
+
+	/** failed requests by account that were worth a retry */
+	Map<String, Long> getRetriesByKey();
+}
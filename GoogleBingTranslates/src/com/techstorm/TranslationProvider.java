@@ -0,0 +1,59 @@
+package com.techstorm;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A service that translates batches of texts. Languages are given the way
+ * config.properties names them. Implementations do their own rate limiting,
+ * retries and account failover.
+ */
+public interface TranslationProvider {
+
+	/**
+	 * Name under which the translations are kept in the translation memory.
+	 */
+	String getName();
+
+	/**
+	 * Most texts one request may carry, larger batches are split by the
+	 * caller.
+	 */
+	int getMaxTextsPerRequest();
+
+	/**
+	 * Translates the texts without blocking the caller.
+	 *
+	 * @return the translations, in the order of the texts
+	 */
+	CompletableFuture<List<String>> translateAsync(List<String> texts,
+			String fromLanguage, String toLanguage);
+
+	/**
+	 * Translates the texts and waits for the translations.
+	 */
+	default List<String> translate(List<String> texts, String fromLanguage,
+			String toLanguage) throws IOException {
+		try {
+			return translateAsync(texts, fromLanguage, toLanguage).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while translating", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	static long countCharacters(List<String> texts) {
+		long count = 0;
+		for (String text : texts) {
+			count += text.length();
+		}
+		return count;
+	}
+}
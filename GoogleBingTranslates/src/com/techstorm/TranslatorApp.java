@@ -1,49 +1,338 @@
 package com.techstorm;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import au.com.bytecode.opencsv.CSV;
 import au.com.bytecode.opencsv.CSVReadProc;
-import au.com.bytecode.opencsv.CSVWriteProc;
-import au.com.bytecode.opencsv.CSVWriter;
 
-import com.memetix.mst.translate.Translate;
-import com.translator.google.core.Translation;
 import com.translator.google.translator.OnlineGoogleTranslator;
-import com.translator.google.translator.OnlineGoogleTranslator.Language;
+
+import sample.util.SimpleCommandLineParser;
 
 public class TranslatorApp {
-	private static OnlineGoogleTranslator translator;
-	private static List<Integer> columnIndexes;
-	private static Map<String, String> translateCache = new HashMap<String, String>();
+	private static final Logger LOG = Logger.getLogger(TranslatorApp.class
+			.getName());
 
-	private static String combinationKey(String text, String fromLanguage, String toLanguage) {
-		return text + "@" + fromLanguage + "@" + toLanguage;
-	}
+	/** provider of every language in toLanguages */
+	private static Map<String, TranslationProvider> providers;
+	private static List<Integer> columnIndexes;
+	private static TranslationMemory translationMemory;
+	/** runs the blocking API calls, its size bounds the calls in flight */
+	private static Executor executor;
 
 	public static void main(String[] args) throws Exception {
-		System.out.println("Starting Translate App...");
+		SimpleCommandLineParser commandLine = new SimpleCommandLineParser(args);
 		Config config = readConfiguration();
+		Logging.configure(config);
+		if (commandLine.containsKey("merge")) {
+			mergeShards(config, Integer.parseInt(commandLine.getValue("merge")));
+			return;
+		}
+		Shard shard = Shard.WHOLE;
+		if (commandLine.containsKey("shard")) {
+			shard = Shard.parse(commandLine.getValue("shard"),
+					config.shardByHash);
+		}
+		LOG.info("Starting Translate App..."
+				+ (shard.isWhole() ? "" : " (" + shard + ")"));
+		// keep one idle connection per worker instead of the default five
+		if (System.getProperty("http.maxConnections") == null) {
+			System.setProperty("http.maxConnections",
+					String.valueOf(Math.max(5, config.threads)));
+		}
 
-		Map<String, List<List<String>>> outputs = new HashMap<String, List<List<String>>>();
-
-		List<Account> googleAccounts = new ArrayList<Account>();
-		List<Account> bingAccounts = new ArrayList<Account>();
+		ExecutorService workers = null;
+		if (config.threads > 1) {
+			workers = Executors.newFixedThreadPool(config.threads);
+			executor = workers;
+		} else {
+			// translate inline on the reading thread
+			executor = Runnable::run;
+		}
 
-		// read csv file for each rows
+		// the accounts file, the input feed is read with CsvReader
 		CSV csv = CSV.separator(',') // delimiter of fields
 				.noQuote()
 				.charset(StandardCharsets.UTF_8)
 				.create(); // new instance is immutable
 
+		TranslationCache cache = new TranslationCache(
+				config.cacheMegabytes * 1024L * 1024L);
+		translationMemory = new TranslationMemory(getTranslationMemory(
+				config, shard), cache);
+		Metrics metrics = new Metrics(translationMemory);
+		metrics.register();
+		if (config.metricsInterval > 0) {
+			metrics.start(config.metricsInterval,
+					config.metricsCsv != null ? new File(config.metricsCsv)
+							: null);
+		}
+
+		TranslationProvider google;
+		TranslationProvider bing;
+		if (config.localProvider) {
+			google = new MeteredTranslationProvider(
+					new LocalTranslationProvider(config.localLatency,
+							config.localJitter, executor), metrics);
+			bing = google;
+		} else {
+			RetryPolicy retryPolicy = new RetryPolicy(config.retryAttempts,
+					config.retryDelay, config.retryMaxDelay);
+			google = new MeteredTranslationProvider(
+					new GoogleTranslationProvider(createGoogleTranslators(
+							config, csv), retryPolicy, metrics, executor),
+					metrics);
+			bing = new MeteredTranslationProvider(new BingTranslationProvider(
+					createBingAccounts(config, csv), retryPolicy, metrics,
+					executor), metrics);
+			if (config.bingEndpoint != null) {
+				BingTranslationProvider.useEndpoint(config.bingEndpoint);
+			}
+		}
+		providers = new HashMap<String, TranslationProvider>();
+		for (String toLanguage : config.toLanguages) {
+			if (toLanguage.equalsIgnoreCase("bing")) {
+				providers.put(toLanguage, bing);
+			} else if (config.useGoogle) {
+				providers.put(toLanguage, google);
+			}
+		}
+
+		columnIndexes = null;
+		try {
+			columnIndexes = new ArrayList<Integer>();
+			String[] columnArray = config.columns.split(",");
+			for (String column : columnArray) {
+				columnIndexes.add(Integer.parseInt(column));
+			}
+		} catch (NumberFormatException e) {
+			// nothing
+		}
+
+		if (columnIndexes == null) {
+			System.exit(1);
+		}
+
+		// open one writer per output language up front, rows are written as
+		// soon as they are translated so nothing is buffered in memory
+		Map<String, File> outputs = getOutputs(config, shard);
+		Delta delta = null;
+		if (config.deltaKey > 0) {
+			// write next to the previous outputs, copying their unchanged rows
+			outputs.put(Delta.MANIFEST, new File(getManifestFile(
+					config.outputCsv, shard, config.gzip)));
+			delta = new Delta(config, outputs);
+			delta.load();
+			outputs = delta.getStagingFiles();
+		}
+
+		File progressFile = new File(getProgressFile(config.outputCsv, shard));
+		Checkpoint checkpoint = new Checkpoint(progressFile, outputs,
+				config.checkpointRows, translationMemory);
+		long skipRows = 0;
+		if (commandLine.containsKey("resume")) {
+			skipRows = checkpoint.restore();
+			LOG.info("Resuming after row " + skipRows);
+		}
+
+		Map<String, CsvWriter> writers = new HashMap<String, CsvWriter>();
+		for (Map.Entry<String, File> output : outputs.entrySet()) {
+			writers.put(output.getKey(), CsvWriter.open(output.getValue(),
+					skipRows > 0, config.gzip));
+		}
+
+		TranslationEngine.BatchTranslator batchTranslator = new TranslationEngine.BatchTranslator() {
+			public CompletableFuture<List<String>> translate(
+					List<String> values, String fromLanguage,
+					String toLanguage, String correlationId) {
+				if (config.segment) {
+					return translateSegments(config, values, fromLanguage,
+							toLanguage, correlationId);
+				}
+				return translateValues(config, values, fromLanguage,
+						toLanguage, correlationId);
+			}
+		};
+		TranslationEngine engine = new TranslationEngine(config,
+				columnIndexes, batchTranslator, writers, checkpoint, metrics,
+				delta);
+		long resumeAfter = skipRows;
+
+		if (config.dedupe) {
+			// translate every distinct value once, the pass below then
+			// finds all translations in the translation memory
+			LOG.info("Translating distinct values...");
+			DedupPass dedup = new DedupPass(config, columnIndexes,
+					batchTranslator);
+			Delta changes = delta;
+			readInput(config, shard, resumeAfter, record -> {
+				if (changes == null || !changes.isUnchanged(record)) {
+					dedup.submit(record);
+				}
+			});
+			dedup.finish();
+			LOG.info(dedup.toString());
+		}
+
+		try {
+			readInput(config, shard, resumeAfter, engine::submit);
+		} finally {
+			LOG.info("Closing outputs...");
+			try {
+				engine.finish();
+			} finally {
+				engine.close();
+				translationMemory.close();
+				metrics.stop();
+				LOG.info(translationMemory.getCache().toString());
+				if (workers != null) {
+					workers.shutdown();
+				}
+				if (delta != null) {
+					delta.close();
+				}
+			}
+		}
+
+		if (delta != null) {
+			LOG.info(delta.toString());
+			// the progress is that of the staging files, it goes before they
+			// replace the outputs so it never points into the replaced ones
+			Files.deleteIfExists(progressFile.toPath());
+			delta.commit();
+		}
+
+	}
+
+	/**
+	 * Hands the records of the shard to the consumer, leaving out the first
+	 * skipRows of them that an earlier run already wrote.
+	 */
+	private static void readInput(Config config, Shard shard, long skipRows,
+			Consumer<CsvRecord> consumer) throws IOException {
+		CsvReader input = shard.open(new File(config.inputCsv));
+		try {
+			long rowIndex = 0;
+			long shardRows = 0;
+			CsvRecord record;
+			while ((record = input.next()) != null) {
+				if (shard.contains(rowIndex++) && shardRows++ >= skipRows) {
+					consumer.accept(record);
+				}
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * The output file of every language that is written.
+	 */
+	private static Map<String, File> getOutputs(Config config, Shard shard) {
+		Map<String, File> outputs = new HashMap<String, File>();
+		for (int languageIndex = 0; languageIndex < config.toLanguages.size(); languageIndex++) {
+			String toLanguage = config.toLanguages.get(languageIndex);
+			if (!config.useGoogle
+					&& languageIndex != config.toLanguages.size() - 1) {
+				continue;
+			}
+			if (!config.useBing && toLanguage.equalsIgnoreCase("bing")) {
+				continue;
+			}
+			outputs.put(toLanguage, new File(getOutputCsvLanguage(
+					config.outputCsv, toLanguage, shard.getSuffix(),
+					config.gzip)));
+		}
+		return outputs;
+	}
+
+	/**
+	 * Workers cannot append to one log side by side, so every shard keeps its
+	 * own, starting from a copy of the shared one.
+	 */
+	private static File getTranslationMemory(Config config, Shard shard)
+			throws IOException {
+		if (config.translationMemory == null) {
+			return null;
+		}
+		File shared = new File(config.translationMemory);
+		if (shard.isWhole()) {
+			return shared;
+		}
+		File own = new File(config.translationMemory + shard.getSuffix());
+		if (!own.exists() && shared.exists()) {
+			Files.copy(shared.toPath(), own.toPath());
+		}
+		return own;
+	}
+
+	/**
+	 * Puts the part files the shards wrote together into the outputs, and the
+	 * translations every shard added to its own copy of the translation
+	 * memory back into the shared one, so later runs find them there.
+	 */
+	private static void mergeShards(Config config, int count)
+			throws IOException {
+		for (Map.Entry<String, File> output : getOutputs(config, Shard.WHOLE)
+				.entrySet()) {
+			List<File> parts = new ArrayList<File>(count);
+			for (int index = 1; index <= count; index++) {
+				parts.add(getOutputs(config,
+						new Shard(index, count, config.shardByHash)).get(
+						output.getKey()));
+			}
+			Shard.merge(parts, output.getValue(), config.shardByHash,
+					config.gzip);
+			LOG.info("Merged " + count + " parts into " + output.getValue());
+		}
+		if (config.translationMemory == null) {
+			return;
+		}
+		List<File> copies = new ArrayList<File>(count);
+		TranslationMemory shared = new TranslationMemory(new File(
+				config.translationMemory), new TranslationCache(0));
+		try {
+			for (int index = 1; index <= count; index++) {
+				File copy = new File(config.translationMemory
+						+ new Shard(index, count, config.shardByHash)
+								.getSuffix());
+				if (copy.exists()) {
+					int merged = shared.merge(copy);
+					copies.add(copy);
+					LOG.info("Merged " + merged + " new translations from "
+							+ copy + " into " + config.translationMemory);
+				}
+			}
+		} finally {
+			shared.close();
+		}
+		// only once the shared memory is on the disk
+		for (File copy : copies) {
+			Files.delete(copy.toPath());
+		}
+	}
+
+	private static List<Account> readAccounts(Config config, CSV csv,
+			boolean google) {
+		List<Account> accounts = new ArrayList<Account>();
 		csv.read(config.accountsCsv, new CSVReadProc() {
 			public void procRow(int rowIndex, String... values) {
 				if (rowIndex == 0) {
@@ -55,147 +344,259 @@ public class TranslatorApp {
 				account.password = values[1];
 				account.goolgeAccount = values[2].equals("google") ? true
 						: false;
+				if (account.goolgeAccount != google) {
+					return;
+				}
 				if (account.goolgeAccount) {
 					account.apiKey = values[3];
-					googleAccounts.add(account);
 				} else {
 					account.clientId = values[3];
 					account.secret = values[4];
-					bingAccounts.add(account);
 				}
-
+				accounts.add(account);
 			}
 		});
-		if (googleAccounts != null && !googleAccounts.isEmpty()) {
-			translator = OnlineGoogleTranslator.createInstance(googleAccounts
-					.get(0).apiKey);
+		return accounts;
+	}
+
+	private static AccountPool<OnlineGoogleTranslator> createGoogleTranslators(
+			Config config, CSV csv) {
+		AccountPool<OnlineGoogleTranslator> translators = new AccountPool<OnlineGoogleTranslator>(
+				config.accountCooldown * 1000L, new RateLimiter(
+						config.googleRequestsPerSecond,
+						config.googleCharactersPerSecond),
+				config.googleKeyRequestsPerSecond,
+				config.googleKeyCharactersPerSecond);
+		for (Account account : readAccounts(config, csv, true)) {
+			OnlineGoogleTranslator translator = OnlineGoogleTranslator
+					.createInstance(account.apiKey);
+			translator.setConnectTimeout(config.connectTimeout);
+			translator.setReadTimeout(config.readTimeout);
+			if (config.googleEndpoint != null) {
+				translator.setEndpoint(config.googleEndpoint);
+			}
+			translator.setExecutor(executor);
+			translators.add(account, translator);
 		}
-		if (bingAccounts != null && !bingAccounts.isEmpty()) {
-			setAuthForBingTranslates(bingAccounts.get(0).clientId,
-					bingAccounts.get(0).secret);
+		return translators;
+	}
+
+	private static AccountPool<Account> createBingAccounts(Config config,
+			CSV csv) {
+		AccountPool<Account> accounts = new AccountPool<Account>(
+				config.accountCooldown * 1000L, new RateLimiter(
+						config.bingRequestsPerSecond,
+						config.bingCharactersPerSecond),
+				config.bingKeyRequestsPerSecond,
+				config.bingKeyCharactersPerSecond);
+		for (Account account : readAccounts(config, csv, false)) {
+			accounts.add(account, account);
 		}
+		return accounts;
+	}
 
-		columnIndexes = null;
+	private static CompletableFuture<List<String>> translateValues(
+			Config config, List<String> values, String fromLanguage,
+			String toLanguage, String correlationId) {
+		List<String> result = new ArrayList<String>(values);
+		TranslationProvider provider = providers.get(toLanguage);
+		String engine = provider != null ? provider.getName() : "none";
+		// unique values that are not in the memory yet, mapped to their
+		// translation
+		Map<String, String> misses = new LinkedHashMap<String, String>();
+		CompletableFuture<List<String>> translated;
 		try {
-			columnIndexes = new ArrayList<Integer>();
-			String[] columnArray = config.columns.split(",");
-			for (String column : columnArray) {
-				columnIndexes.add(Integer.parseInt(column));
+			for (int index = 0; index < values.size(); index++) {
+				String value = values.get(index);
+				if (value == null || value.trim().isEmpty()) {
+					continue;
+				}
+				String remembered = translationMemory.get(engine, value,
+						fromLanguage, toLanguage);
+				if (remembered != null) {
+					result.set(index, remembered);
+				} else {
+					misses.put(value, value);
+				}
+			}
+			if (misses.isEmpty()) {
+				return CompletableFuture.completedFuture(result);
+			}
+			if (LOG.isLoggable(Level.FINE)) {
+				LOG.fine(correlationId + ": " + fromLanguage + " to "
+						+ toLanguage + ", " + misses.size() + " of "
+						+ values.size() + " values not in the memory");
 			}
-		} catch (NumberFormatException e) {
-			// nothing
-		}
 
-		if (columnIndexes == null) {
-			System.exit(1);
+			// If not yet save cache, do translates
+			List<String> texts = new ArrayList<String>(misses.keySet());
+			translated = config.mask ? translateMasked(config, texts,
+					fromLanguage, toLanguage) : translateTexts(config, texts,
+					fromLanguage, toLanguage);
+		} catch (Exception e) {
+			LOG.log(Level.WARNING, correlationId + ": cannot translate "
+					+ fromLanguage + " to " + toLanguage, e);
+			return CompletableFuture.completedFuture(result);
 		}
 
-		for (String toLanguage : config.toLanguages) {
-			List<List<String>> csvContent = new ArrayList<List<String>>();
-			outputs.put(toLanguage, csvContent);
-		}
-		csv.read(config.inputCsv, new CSVReadProc() {
-			public void procRow(int rowIndex, String... values) {
-				List<List<String>> previousContent = null;
-				for (int languageIndex = 0; languageIndex < config.toLanguages
-						.size(); languageIndex++) {
-					
-					String toLanguage = config.toLanguages.get(languageIndex);
-					List<List<String>> csvContent = outputs.get(toLanguage);
-					List<String> rowContent = new ArrayList<String>();
-					String[] valuesPreviousOrOriginal = values;
-					if (previousContent != null) {
-						valuesPreviousOrOriginal = (String[]) previousContent
-								.get(rowIndex).toArray(
-										new String[previousContent.size()]);
-					}
-					for (int index = 0; index < valuesPreviousOrOriginal.length; index++) {
-						String value = valuesPreviousOrOriginal[index];
-						for (Integer columnIndex : columnIndexes) {
-							
-							if (columnIndex - 1 == index) {
-								
-								String fromLanguage = config.fromLanguage;
-								if (languageIndex > 0) {
-									fromLanguage = config.toLanguages
-											.get(languageIndex - 1);
-								}
-								String combinationKey = combinationKey(value,
-										fromLanguage, toLanguage);
-								if (translateCache.containsKey(combinationKey)) {
-									value = translateCache.get(combinationKey(
-											value, fromLanguage, toLanguage));
-								} else {
-//									 If not yet save cache, do translates
-									try {
-										
-										if (toLanguage.equalsIgnoreCase("bing")) {
-											value = bingTranslates(value,
-													fromLanguage,
-													config.toLanguageBing);
-										} else if (config.useGoogle) {
-											value = googleTranslates(value,
-													fromLanguage,
-													toLanguage);
-										}
-										translateCache.put(combinationKey,
-												value);
-									} catch (Exception e) {
-										e.printStackTrace();
-									}
-
-								}
-
-							}
+		return translated.handle((translations, failure) -> {
+			try {
+				if (failure != null) {
+					LOG.log(Level.WARNING, correlationId + ": translation "
+							+ fromLanguage + " to " + toLanguage
+							+ " failed, the values stay untranslated", failure);
+				} else if (translations != null) {
+					int index = 0;
+					for (String text : misses.keySet()) {
+						String translation = translations.get(index++);
+						if (translation != null) {
+							misses.put(text, translation);
+							translationMemory.put(engine, text, fromLanguage,
+									toLanguage, translation);
 						}
-
-						rowContent.add(value);
 					}
-					previousContent = csvContent;
-					csvContent.add(rowContent);
+				}
+			} catch (IOException e) {
+				LOG.log(Level.WARNING, correlationId
+						+ ": cannot save to the translation memory", e);
+			} catch (RuntimeException e) {
+				// the batch must still complete, the values the translations
+				// did not reach stay untranslated
+				LOG.log(Level.WARNING, correlationId + ": translation "
+						+ fromLanguage + " to " + toLanguage
+						+ " went wrong, some values stay untranslated", e);
+			}
 
+			for (int index = 0; index < values.size(); index++) {
+				String translation = misses.get(values.get(index));
+				if (translation != null) {
+					result.set(index, translation);
 				}
 			}
+			return result;
 		});
-		
-		System.out.println("Generating outputs...");
-		
-		int index = -1;
-		for (String languageKey : outputs.keySet()) {
-			index++;
-			if (!config.useGoogle && index != outputs.keySet().size() - 1) {
-				continue;
-			}
-			if (!config.useBing && languageKey.equalsIgnoreCase("bing")) {
-				continue;
+	}
+
+	/**
+	 * Sends the texts to the provider of the language, at most
+	 * {@link TranslationProvider#getMaxTextsPerRequest()} and
+	 * {@link Config#charactersPerRequest} per request, so long texts do not
+	 * add up to a request the service refuses.
+	 * Completes with null when no provider is enabled for the language.
+	 */
+	private static CompletableFuture<List<String>> translateTexts(
+			Config config, List<String> texts, String fromLanguage,
+			String toLanguage) {
+		TranslationProvider provider = providers.get(toLanguage);
+		if (provider == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		// the bing column holds the Bing translation into toLanguageBing
+		String targetLanguage = toLanguage.equalsIgnoreCase("bing")
+				? config.toLanguageBing : toLanguage;
+		int maxTexts = provider.getMaxTextsPerRequest();
+		long maxCharacters = config.charactersPerRequest > 0
+				? config.charactersPerRequest : Long.MAX_VALUE;
+		List<CompletableFuture<List<String>>> requests = new ArrayList<CompletableFuture<List<String>>>();
+		for (int start = 0; start < texts.size();) {
+			// every request takes at least one text, however long
+			int end = start + 1;
+			long characters = texts.get(start).length();
+			while (end < texts.size() && end - start < maxTexts
+					&& characters + texts.get(end).length() <= maxCharacters) {
+				characters += texts.get(end++).length();
 			}
+			requests.add(provider.translateAsync(texts.subList(start, end),
+					fromLanguage, targetLanguage));
+			start = end;
+		}
+		return CompletableFuture.allOf(
+				requests.toArray(new CompletableFuture<?>[requests.size()]))
+				.thenApply(done -> {
+					List<String> result = new ArrayList<String>(texts.size());
+					for (CompletableFuture<List<String>> request : requests) {
+						result.addAll(request.join());
+					}
+					return result;
+				});
+	}
 
-			csv.write(getOutputCsvLanguage(config.outputCsv, languageKey),
-					new CSVWriteProc() {
-						public void process(CSVWriter out) {
-							List<List<String>> csvContent = outputs
-									.get(languageKey);
-							for (List<String> rowContent : csvContent) {
-
-								if (rowContent != null && !rowContent.isEmpty()) {
-									StringBuilder rowString = new StringBuilder();
-									for (String value : rowContent) {
-										rowString.append(value);
-										rowString.append(",");
-									}
-									rowString.deleteCharAt(rowString.length() - 1);
-									out.writeNext(rowString.toString());
-								}
-
-							}
-						}
-					});
+	/**
+	 * Sends the texts with their untranslatable tokens masked and restores
+	 * the tokens in the translations. Texts that are nothing but tokens are
+	 * not sent at all, a translation that lost a placeholder is dropped.
+	 */
+	private static CompletableFuture<List<String>> translateMasked(
+			Config config, List<String> texts, String fromLanguage,
+			String toLanguage) {
+		List<TokenMasker.Masked> masked = new ArrayList<TokenMasker.Masked>(
+				texts.size());
+		List<String> send = new ArrayList<String>();
+		for (String text : texts) {
+			TokenMasker.Masked mask = TokenMasker.mask(text);
+			masked.add(mask);
+			if (mask.isTranslatable()) {
+				send.add(mask.text);
+			}
 		}
+		return translateTexts(config, send, fromLanguage, toLanguage)
+				.thenApply(translations -> {
+					if (translations == null) {
+						return null;
+					}
+					List<String> result = new ArrayList<String>(texts.size());
+					int index = 0;
+					for (TokenMasker.Masked mask : masked) {
+						if (!mask.isTranslatable()) {
+							result.add(mask.original);
+							continue;
+						}
+						String translation = translations.get(index++);
+						result.add(translation != null ? mask
+								.unmask(translation) : null);
+					}
+					return result;
+				});
+	}
 
+	/**
+	 * Translates the text segments of the values on their own and puts the
+	 * markup back around them, so a segment repeated across many cells is
+	 * translated once and then found in the translation memory.
+	 */
+	private static CompletableFuture<List<String>> translateSegments(
+			Config config, List<String> values, String fromLanguage,
+			String toLanguage, String correlationId) {
+		List<List<String>> splits = new ArrayList<List<String>>(values.size());
+		List<String> segments = new ArrayList<String>();
+		for (String value : values) {
+			List<String> parts = value != null ? Segmenter.split(value) : null;
+			splits.add(parts);
+			for (int index = 1; parts != null && index < parts.size(); index += 2) {
+				segments.add(parts.get(index));
+			}
+		}
+		return translateValues(config, segments, fromLanguage, toLanguage,
+				correlationId)
+				.thenApply(translated -> {
+					List<String> result = new ArrayList<String>(values.size());
+					int segment = 0;
+					for (List<String> parts : splits) {
+						if (parts == null) {
+							result.add(null);
+							continue;
+						}
+						for (int index = 1; index < parts.size(); index += 2) {
+							parts.set(index, translated.get(segment++));
+						}
+						result.add(Segmenter.join(parts));
+					}
+					return result;
+				});
 	}
 
 	private static String getOutputCsvLanguage(String outputOriginalFilename,
-			String languageKey) {
+			String languageKey, String part, boolean gzip) {
 		StringBuilder result = new StringBuilder();
 		String[] parts = outputOriginalFilename.split("\\.");
 		if (parts != null && parts.length > 0) {
@@ -203,10 +604,23 @@ public class TranslatorApp {
 		}
 		result.append("_");
 		result.append(languageKey);
-		result.append(".csv");
+		result.append(part);
+		result.append(gzip ? ".csv.gz" : ".csv");
 		return result.toString();
 	}
 
+	private static String getProgressFile(String outputOriginalFilename,
+			Shard shard) {
+		return outputOriginalFilename.split("\\.")[0] + shard.getSuffix()
+				+ ".progress";
+	}
+
+	private static String getManifestFile(String outputOriginalFilename,
+			Shard shard, boolean gzip) {
+		return outputOriginalFilename.split("\\.")[0] + shard.getSuffix()
+				+ ".manifest" + (gzip ? ".csv.gz" : ".csv");
+	}
+
 	private static Config readConfiguration() {
 		Config result = new Config();
 
@@ -238,6 +652,149 @@ public class TranslatorApp {
 			String columns = prop.getProperty("columns");
 			result.columns = columns;
 
+			String threads = prop.getProperty("threads");
+			if (threads != null) {
+				result.threads = Integer.parseInt(threads.trim());
+			}
+
+			String batchSize = prop.getProperty("batchSize");
+			if (batchSize != null) {
+				result.batchSize = Integer.parseInt(batchSize.trim());
+			}
+			String charactersPerRequest = prop
+					.getProperty("charactersPerRequest");
+			if (charactersPerRequest != null) {
+				result.charactersPerRequest = Integer
+						.parseInt(charactersPerRequest.trim());
+			}
+
+			result.translationMemory = prop.getProperty("translationMemory");
+			String cacheMegabytes = prop.getProperty("cacheMegabytes");
+			if (cacheMegabytes != null) {
+				result.cacheMegabytes = Integer.parseInt(cacheMegabytes.trim());
+			}
+
+			String connectTimeout = prop.getProperty("connectTimeout");
+			if (connectTimeout != null) {
+				result.connectTimeout = Integer.parseInt(connectTimeout.trim());
+			}
+			String readTimeout = prop.getProperty("readTimeout");
+			if (readTimeout != null) {
+				result.readTimeout = Integer.parseInt(readTimeout.trim());
+			}
+
+			String accountCooldown = prop.getProperty("accountCooldown");
+			if (accountCooldown != null) {
+				result.accountCooldown = Integer.parseInt(accountCooldown
+						.trim());
+			}
+
+			result.googleRequestsPerSecond = readRate(prop,
+					"googleRequestsPerSecond");
+			result.googleCharactersPerSecond = readRate(prop,
+					"googleCharactersPerSecond");
+			result.googleKeyRequestsPerSecond = readRate(prop,
+					"googleKeyRequestsPerSecond");
+			result.googleKeyCharactersPerSecond = readRate(prop,
+					"googleKeyCharactersPerSecond");
+			result.bingRequestsPerSecond = readRate(prop,
+					"bingRequestsPerSecond");
+			result.bingCharactersPerSecond = readRate(prop,
+					"bingCharactersPerSecond");
+			result.bingKeyRequestsPerSecond = readRate(prop,
+					"bingKeyRequestsPerSecond");
+			result.bingKeyCharactersPerSecond = readRate(prop,
+					"bingKeyCharactersPerSecond");
+
+			String retryAttempts = prop.getProperty("retryAttempts");
+			if (retryAttempts != null) {
+				result.retryAttempts = Integer.parseInt(retryAttempts.trim());
+			}
+			String retryDelay = prop.getProperty("retryDelay");
+			if (retryDelay != null) {
+				result.retryDelay = Long.parseLong(retryDelay.trim());
+			}
+			String retryMaxDelay = prop.getProperty("retryMaxDelay");
+			if (retryMaxDelay != null) {
+				result.retryMaxDelay = Long.parseLong(retryMaxDelay.trim());
+			}
+
+			String languageMode = prop.getProperty("languageMode");
+			if (languageMode != null) {
+				result.chainLanguages = !languageMode.trim()
+						.equalsIgnoreCase("fanout");
+			}
+
+			String checkpointRows = prop.getProperty("checkpointRows");
+			if (checkpointRows != null) {
+				result.checkpointRows = Integer.parseInt(checkpointRows.trim());
+			}
+
+			String dedupe = prop.getProperty("dedupe");
+			if (dedupe != null && dedupe.trim().equalsIgnoreCase("YES")) {
+				result.dedupe = true;
+			}
+
+			String segment = prop.getProperty("segment");
+			if (segment != null && segment.trim().equalsIgnoreCase("YES")) {
+				result.segment = true;
+			}
+
+			String localProvider = prop.getProperty("localProvider");
+			if (localProvider != null
+					&& localProvider.trim().equalsIgnoreCase("YES")) {
+				result.localProvider = true;
+			}
+			String localLatency = prop.getProperty("localLatency");
+			if (localLatency != null) {
+				result.localLatency = Long.parseLong(localLatency.trim());
+			}
+			String localJitter = prop.getProperty("localJitter");
+			if (localJitter != null) {
+				result.localJitter = Long.parseLong(localJitter.trim());
+			}
+
+			String metricsInterval = prop.getProperty("metricsInterval");
+			if (metricsInterval != null) {
+				result.metricsInterval = Integer.parseInt(metricsInterval
+						.trim());
+			}
+			result.metricsCsv = prop.getProperty("metricsCsv");
+
+			result.googleEndpoint = prop.getProperty("googleEndpoint");
+			result.bingEndpoint = prop.getProperty("bingEndpoint");
+
+			String logLevel = prop.getProperty("logLevel");
+			if (logLevel != null) {
+				result.logLevel = Level.parse(logLevel.trim().toUpperCase());
+			}
+			result.logFile = prop.getProperty("logFile");
+			String logPayloads = prop.getProperty("logPayloads");
+			if (logPayloads != null
+					&& logPayloads.trim().equalsIgnoreCase("YES")) {
+				result.logPayloads = true;
+			}
+
+			String shardBy = prop.getProperty("shardBy");
+			if (shardBy != null && shardBy.trim().equalsIgnoreCase("hash")) {
+				result.shardByHash = true;
+			}
+
+			String gzip = prop.getProperty("gzip");
+			if (gzip != null && gzip.trim().equalsIgnoreCase("YES")) {
+				result.gzip = true;
+			}
+
+			String deltaKey = prop.getProperty("deltaKey");
+			if (deltaKey != null) {
+				result.deltaKey = Integer.parseInt(deltaKey.trim());
+			}
+
+			String mask = prop.getProperty("mask");
+			if (mask != null && mask.trim().equalsIgnoreCase("YES")) {
+				result.mask = true;
+			}
+
 			String fromLang = prop.getProperty("fromLanguage");
 			result.fromLanguage = fromLang;
 
@@ -254,13 +811,13 @@ public class TranslatorApp {
 				result.toLanguageBing = prop.getProperty("toLanguageBing");
 			}
 		} catch (IOException ex) {
-			ex.printStackTrace();
+			LOG.log(Level.SEVERE, "Cannot read config.properties", ex);
 		} finally {
 			if (input != null) {
 				try {
 					input.close();
 				} catch (IOException e) {
-					e.printStackTrace();
+					LOG.log(Level.WARNING, "Cannot close config.properties", e);
 				}
 			}
 		}
@@ -268,54 +825,12 @@ public class TranslatorApp {
 		return result;
 	}
 
-	private static Language getGLanguageObject(String languageString) {
-		Language result = Language.ENGLISH;
-		for (Language lang : Language.values()) {
-			if (languageString.equalsIgnoreCase(lang.name())
-					|| languageString.equalsIgnoreCase(lang.value)) {
-				result = lang;
-			}
-
-		}
-		return result;
-	}
-
-	private static com.memetix.mst.language.Language getBLanguageObject(
-			String languageString) {
-		com.memetix.mst.language.Language result = com.memetix.mst.language.Language.ENGLISH;
-		for (com.memetix.mst.language.Language lang : com.memetix.mst.language.Language
-				.values()) {
-			if (languageString.equalsIgnoreCase(lang.name())
-					|| languageString.equalsIgnoreCase(lang.toString())) {
-				result = lang;
-			}
-		}
-		return result;
-	}
-
-	private static String googleTranslates(String text, String fromLang,
-			String toLang) throws Exception {
-		// general constants
-		final String SOURCE_TEXT = text;
-		final Language SOURCE_LANGUAGE = getGLanguageObject(fromLang);
-		final Language TARGET_LANGUAGE = getGLanguageObject(toLang);
-
-		Translation translation = translator.translate(SOURCE_TEXT,
-				SOURCE_LANGUAGE, TARGET_LANGUAGE);
-		return translation.getTranslatedText();
-	}
-
-	private static String bingTranslates(String text, String fromLang,
-			String toLang) throws Exception {
-		String translatedText = Translate.execute(text,
-				getBLanguageObject(fromLang), getBLanguageObject(toLang));
-
-		return translatedText;
-	}
-
-	private static void setAuthForBingTranslates(String clientId, String secret) {
-		Translate.setClientId(clientId);
-		Translate.setClientSecret(secret);
+	/**
+	 * A rate per second, zero when it is not configured.
+	 */
+	private static double readRate(Properties prop, String key) {
+		String rate = prop.getProperty(key);
+		return rate != null ? Double.parseDouble(rate.trim()) : 0;
 	}
 
 }
@@ -7,6 +7,8 @@ import java.io.Serializable;
 
 public class Translation implements Serializable
 {
+	private static final long serialVersionUID = 1L;
+
 	private String translatedText;
 
 	public Translation()
@@ -0,0 +1,43 @@
+/**
+ * @author <a href=mailto:volkodavav@gmail.com>volkodavav</a>
+ */
+package com.translator.google.core;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the translation service answers with an HTTP error status.
+ */
+public class TranslationException extends IOException
+{
+	private static final long serialVersionUID = 1L;
+
+	private int statusCode;
+	private long retryAfterMillis;
+
+	public TranslationException(String message, int statusCode, Throwable cause)
+	{
+		this(message, statusCode, -1, cause);
+	}
+
+	public TranslationException(String message, int statusCode, long retryAfterMillis, Throwable cause)
+	{
+		super(message, cause);
+
+		this.statusCode = statusCode;
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	public int getStatusCode()
+	{
+		return statusCode;
+	}
+
+	/**
+	 * @return the delay asked for by a Retry-After header, or -1 without one
+	 */
+	public long getRetryAfterMillis()
+	{
+		return retryAfterMillis;
+	}
+}
@@ -6,17 +6,31 @@ package com.translator.google.translator;
 import com.translator.google.core.Assert;
 import com.translator.google.core.ProxyWrapper;
 import com.translator.google.core.Translation;
+import com.translator.google.core.TranslationException;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.Proxy;
 import java.net.URL;
 import java.net.URLEncoder;
-import javax.net.ssl.HttpsURLConnection;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.codehaus.jackson.map.ObjectMapper;
 
 public class OnlineGoogleTranslator
@@ -29,12 +43,47 @@ public class OnlineGoogleTranslator
 	 */
 	private static final String GOOGLE_TRANSLATOR_URL_ENDPOINT_V1_TEMPLATE = "https://ajax.googleapis.com/ajax/services/language/translate?v=1.0&q=%s&langpair=%s";
 	/**
-	 * {0} - API key
-	 * {1} - source language
-	 * {2} - target language
-	 * {3} - text to translate
+	 * {0} - endpoint
+	 * {1} - API key
+	 * {2} - source language
+	 * {3} - target language
+	 * texts to translate are appended as q parameters
 	 */
-	private static final String GOOGLE_TRANSLATOR_URL_ENDPOINT_V2_TEMPLATE = "https://www.googleapis.com/language/translate/v2?key=%s&source=%s&target=%s&q=%s";
+	private static final String GOOGLE_TRANSLATOR_URL_ENDPOINT_V2_TEMPLATE = "%s/language/translate/v2?key=%s&source=%s&target=%s";
+	/**
+	 * Scheme, host and port the v2 requests go to
+	 */
+	public static final String DEFAULT_ENDPOINT = "https://www.googleapis.com";
+	/**
+	 * Longest url sent as GET, longer batches are sent as POST
+	 */
+	public static final int MAX_GET_URL_LENGTH = 2000;
+	public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+	public static final int DEFAULT_READ_TIMEOUT = 30000;
+	/**
+	 * Requests in flight at most on the default executor, the others wait in
+	 * its queue; callers that need more pass their own executor
+	 */
+	public static final int DEFAULT_EXECUTOR_THREADS = 8;
+	private static final Executor DEFAULT_EXECUTOR = Executors.newFixedThreadPool(DEFAULT_EXECUTOR_THREADS, new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "google-translator");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	/**
+	 * Thread safe once configured, so one mapper serves all requests
+	 */
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	/**
+	 * Logs the text of every batch request at FINEST, the API key left out
+	 */
+	public static final String PAYLOAD_LOGGER = OnlineGoogleTranslator.class.getName() + ".payload";
+	private static final Logger PAYLOAD_LOG = Logger.getLogger(PAYLOAD_LOGGER);
 	private ProxyWrapper proxy;
 	private String connectionCharset;
 	private String userAgent;
@@ -44,6 +93,17 @@ public class OnlineGoogleTranslator
 	 */
 	private String apiKey;
 	private boolean obsoleteVersionUsed;
+	private String endpoint = DEFAULT_ENDPOINT;
+	private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private int readTimeout = DEFAULT_READ_TIMEOUT;
+	/**
+	 * Runs the blocking requests of the async methods. Its number of threads bounds the requests in flight.
+	 */
+	private Executor executor = DEFAULT_EXECUTOR;
+	/**
+	 * Local host name, looked up once
+	 */
+	private volatile String referer;
 
 	@Deprecated
 	public static OnlineGoogleTranslator createInstance()
@@ -95,79 +155,270 @@ public class OnlineGoogleTranslator
 		Assert.notNull(sourceLanguage, "Source language must not be null");
 		Assert.notNull(targetTanguage, "Target language must not be null");
 
-		String url = null;
+		if (!obsoleteVersionUsed)
+		{
+			return translateBatch(Collections.singletonList(text), sourceLanguage, targetTanguage).get(0);
+		}
+
+		String translateParameters = String.format("%s|%s", sourceLanguage.value, targetTanguage.value);
+		translateParameters = URLEncoder.encode(translateParameters, connectionCharset);
+		text = URLEncoder.encode(text, connectionCharset);
+
+		String url = String.format(GOOGLE_TRANSLATOR_URL_ENDPOINT_V1_TEMPLATE, text, translateParameters);
+
+		String resultPlainText = getTranslatedText(url, null);
+		Translation translation = new Translation();
+
+		TranslateResultV1 resultObj = MAPPER.readValue(resultPlainText, TranslateResultV1.class);
 
-		if (obsoleteVersionUsed)
+		if (resultObj.isValid())
 		{
-			String translateParameters = String.format("%s|%s", sourceLanguage.value, targetTanguage.value);
-			translateParameters = URLEncoder.encode(translateParameters, connectionCharset);
-			text = URLEncoder.encode(text, connectionCharset);
+			String translatedText = resultObj.getResponseData().getTranslatedText();
+			translation.setTranslatedText(translatedText);
+		}
+
+		return translation;
+	}
+
+	/**
+	 * Translates all texts with a single v2 request, one q parameter per text.
+	 * The request is sent as a POST when the GET url would be longer than {@link #MAX_GET_URL_LENGTH}.
+	 * The returned list has one translation per text, in the same order.
+	 */
+	public List<Translation> translateBatch(List<String> texts, Language sourceLanguage, Language targetTanguage) throws IOException
+	{
+		Assert.notEmpty(texts, "Texts must not be empty");
+		Assert.notNull(sourceLanguage, "Source language must not be null");
+		Assert.notNull(targetTanguage, "Target language must not be null");
+		Assert.validState(!obsoleteVersionUsed, "Batch translation requires the v2 API");
 
-			url = String.format(GOOGLE_TRANSLATOR_URL_ENDPOINT_V1_TEMPLATE, text, translateParameters);
+		String query = encodeQuery(texts, connectionCharset);
+		if (PAYLOAD_LOG.isLoggable(Level.FINEST))
+		{
+			PAYLOAD_LOG.finest(sourceLanguage.value + " to " + targetTanguage.value + ": " + query);
+		}
+		String url = String.format(GOOGLE_TRANSLATOR_URL_ENDPOINT_V2_TEMPLATE, endpoint, apiKey, sourceLanguage.value, targetTanguage.value);
+		String resultPlainText;
+		if (url.length() + query.length() <= MAX_GET_URL_LENGTH)
+		{
+			resultPlainText = getTranslatedText(url + query, null);
 		}
 		else
 		{
-			text = URLEncoder.encode(text, connectionCharset);
-			System.out.println(text);
-			url = String.format(GOOGLE_TRANSLATOR_URL_ENDPOINT_V2_TEMPLATE, apiKey, sourceLanguage.value, targetTanguage.value, text);
+			int parametersStart = url.indexOf('?');
+			resultPlainText = getTranslatedText(url.substring(0, parametersStart), url.substring(parametersStart + 1) + query);
 		}
 
-		String resultPlainText = getTranslatedText(url);
-		Translation translation = new Translation();
+		return decodeTranslations(resultPlainText, texts.size());
+	}
 
-		if (obsoleteVersionUsed)
+	/**
+	 * The q parameters of a v2 request, each one starting with an ampersand.
+	 */
+	public static String encodeQuery(List<String> texts, String charset) throws UnsupportedEncodingException
+	{
+		StringBuilder query = new StringBuilder();
+		for (String text : texts)
 		{
-			ObjectMapper mapper = new ObjectMapper();
-			TranslateResultV1 resultObj = mapper.readValue(resultPlainText, TranslateResultV1.class);
+			Assert.containText(text, "Text must contains text");
+			query.append("&q=").append(URLEncoder.encode(text, charset));
+		}
+
+		return query.toString();
+	}
+
+	/**
+	 * Reads the translations out of a v2 response.
+	 *
+	 * @param count number of texts that were sent
+	 */
+	public static List<Translation> decodeTranslations(String response, int count) throws IOException
+	{
+		TranslateResultV2 resultObj = MAPPER.readValue(response, TranslateResultV2.class);
 
-			if (resultObj.isValid())
+		List<Translation> translations = new ArrayList<Translation>(count);
+		if (!resultObj.isValid())
+		{
+			for (int i = 0; i < count; i++)
 			{
-				String translatedText = resultObj.getResponseData().getTranslatedText();
-				translation.setTranslatedText(translatedText);
+				translations.add(new Translation());
 			}
+			return translations;
 		}
-		else
+
+		Translation[] translated = resultObj.getData().getTranslations();
+		if (translated.length != count)
+		{
+			throw new IOException("Expected " + count + " translations but got " + translated.length);
+		}
+		for (Translation translation : translated)
+		{
+			translations.add(new Translation(translation.getTranslatedText()));
+		}
+
+		return translations;
+	}
+
+	/**
+	 * Translates on the executor of this translator without blocking the caller.
+	 *
+	 * @see #setExecutor(Executor)
+	 */
+	public CompletableFuture<Translation> translateAsync(final String text, final Language sourceLanguage, final Language targetTanguage)
+	{
+		return supplyAsync(new Callable<Translation>()
 		{
-			ObjectMapper mapper = new ObjectMapper();
-			TranslateResultV2 resultObj = mapper.readValue(resultPlainText, TranslateResultV2.class);
+			@Override
+			public Translation call() throws Exception
+			{
+				return translate(text, sourceLanguage, targetTanguage);
+			}
+		});
+	}
 
-			if (resultObj.isValid())
+	/**
+	 * Batch version of {@link #translateAsync(String, Language, Language)}.
+	 */
+	public CompletableFuture<List<Translation>> translateBatchAsync(final List<String> texts, final Language sourceLanguage, final Language targetTanguage)
+	{
+		return supplyAsync(new Callable<List<Translation>>()
+		{
+			@Override
+			public List<Translation> call() throws Exception
 			{
-				String translatedText = resultObj.getData().getTranslations()[0].getTranslatedText();
-				translation.setTranslatedText(translatedText);
+				return translateBatch(texts, sourceLanguage, targetTanguage);
 			}
+		});
+	}
+
+	private <T> CompletableFuture<T> supplyAsync(final Callable<T> call)
+	{
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		try
+		{
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						future.complete(call.call());
+					}
+					catch (Throwable e)
+					{
+						future.completeExceptionally(e);
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			future.completeExceptionally(e);
 		}
 
-		return translation;
+		return future;
 	}
 
-	private String getTranslatedText(String httpsURL) throws IOException
+	/**
+	 * @param postBody url encoded form parameters, or null to send a GET request
+	 */
+	private String getTranslatedText(String url, String postBody) throws IOException
 	{
-		Assert.containText(httpsURL, "Https URL must contains text");
+		Assert.containText(url, "URL must contains text");
 
-		HttpsURLConnection connection = (HttpsURLConnection) new URL(httpsURL).openConnection(proxy.getProxy());
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection(proxy.getProxy());
 		connection.setRequestProperty("Accept-Charset", connectionCharset);
 		connection.setRequestProperty("User-Agent", userAgent); // Do as if you're using browser.
 		connection.setRequestProperty("Accept-Charset", connectionCharset);
 		connection.setRequestProperty("Connection", "Keep-Alive");
-		connection.setRequestProperty("Cache-Control", "no-cache");
 		connection.setUseCaches(false);
+		connection.setConnectTimeout(connectTimeout);
+		connection.setReadTimeout(readTimeout);
+		connection.setRequestProperty("Referer", getReferer());
 
-		InetAddress address = InetAddress.getLocalHost();
-		String hostname = address.getHostName();
-		connection.setRequestProperty("Referer", hostname);
+		if (postBody != null)
+		{
+			// v2 accepts POST for long queries when told to treat it as GET
+			connection.setRequestMethod("POST");
+			connection.setRequestProperty("X-HTTP-Method-Override", "GET");
+			connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=" + connectionCharset);
+			connection.setDoOutput(true);
+		}
 
 		connection.connect();
 
-		InputStream response = connection.getInputStream();
-		String result = getResponseDataAsString(response, getResponseCharset(connection));
+		if (postBody != null)
+		{
+			OutputStream request = connection.getOutputStream();
+			try
+			{
+				request.write(postBody.getBytes(connectionCharset));
+			}
+			finally
+			{
+				request.close();
+			}
+		}
+
+		InputStream response;
+		try
+		{
+			response = connection.getInputStream();
+		}
+		catch (IOException e)
+		{
+			int statusCode = connection.getResponseCode();
+			// drain the error body so the connection can still be reused
+			String error = getResponseDataAsString(connection.getErrorStream(), DEFAULT_CHARSET);
+			if (statusCode <= 0)
+			{
+				throw e;
+			}
+			throw new TranslationException("Translation request failed with HTTP " + statusCode + ": " + error, statusCode, getRetryAfterMillis(connection), e);
+		}
+
+		// closing the fully read stream, rather than disconnecting, returns
+		// the connection to the keep-alive pool for the next request
+		return getResponseDataAsString(response, getResponseCharset(connection));
+	}
+
+	private long getRetryAfterMillis(HttpURLConnection connection)
+	{
+		String retryAfter = connection.getHeaderField("Retry-After");
+		if (retryAfter != null)
+		{
+			try
+			{
+				return Long.parseLong(retryAfter.trim()) * 1000;
+			}
+			catch (NumberFormatException e)
+			{
+				// an HTTP date, fall back to the caller's backoff
+			}
+		}
+
+		return -1;
+	}
 
-		connection.disconnect();
+	private String getReferer()
+	{
+		if (referer == null)
+		{
+			try
+			{
+				referer = InetAddress.getLocalHost().getHostName();
+			}
+			catch (UnknownHostException e)
+			{
+				referer = "localhost";
+			}
+		}
 
-		return result;
+		return referer;
 	}
 
-	private String getResponseCharset(HttpsURLConnection connection) throws IOException
+	private String getResponseCharset(HttpURLConnection connection) throws IOException
 	{
 		// HTTP response encoding
 		String contentType = connection.getHeaderField("Content-Type");
@@ -244,6 +495,67 @@ public class OnlineGoogleTranslator
 		return obsoleteVersionUsed;
 	}
 
+	public String getEndpoint()
+	{
+		return endpoint;
+	}
+
+	/**
+	 * @param endpoint scheme, host and port to send the v2 requests to instead of {@link #DEFAULT_ENDPOINT}, like a local mock server
+	 */
+	public void setEndpoint(String endpoint)
+	{
+		Assert.containText(endpoint, "Endpoint must contain text");
+
+		this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+	}
+
+	public int getConnectTimeout()
+	{
+		return connectTimeout;
+	}
+
+	/**
+	 * @param connectTimeout milliseconds, 0 waits forever
+	 */
+	public void setConnectTimeout(int connectTimeout)
+	{
+		Assert.isTrue(connectTimeout >= 0, "Connect timeout must be >= 0");
+
+		this.connectTimeout = connectTimeout;
+	}
+
+	public Executor getExecutor()
+	{
+		return executor;
+	}
+
+	/**
+	 * Executor the async requests run on. By default all translators share a
+	 * pool of {@link #DEFAULT_EXECUTOR_THREADS} threads.
+	 */
+	public void setExecutor(Executor executor)
+	{
+		Assert.notNull(executor, "Executor must not be null");
+
+		this.executor = executor;
+	}
+
+	public int getReadTimeout()
+	{
+		return readTimeout;
+	}
+
+	/**
+	 * @param readTimeout milliseconds, 0 waits forever
+	 */
+	public void setReadTimeout(int readTimeout)
+	{
+		Assert.isTrue(readTimeout >= 0, "Read timeout must be >= 0");
+
+		this.readTimeout = readTimeout;
+	}
+
 	@Deprecated
 	private OnlineGoogleTranslator(ProxyWrapper proxy, String connectionCharset, String userAgent)
 	{
@@ -337,8 +649,12 @@ public class OnlineGoogleTranslator
 
 	private static class TranslateResultV2 implements Serializable
 	{
+		private static final long serialVersionUID = 1L;
+
 		public static class Data implements Serializable
 		{
+			private static final long serialVersionUID = 1L;
+
 			private Translation[] translations;
 
 			public Translation[] getTranslations()
@@ -383,8 +699,12 @@ public class OnlineGoogleTranslator
 
 	private static class TranslateResultV1 implements Serializable
 	{
+		private static final long serialVersionUID = 1L;
+
 		public static class ResponseData implements Serializable
 		{
+			private static final long serialVersionUID = 1L;
+
 			private String translatedText;
 
 			public String getTranslatedText()